@@ -0,0 +1,62 @@
+package control;
+
+import java.io.IOException;
+
+import org.newdawn.slick.SlickException;
+
+/**
+ * Checks that the simulation's hot paths allocate nothing once warmed up, so long games don't stutter on GC.
+ * Builds a Benchmark scenario, runs it until the JIT has settled, then counts the bytes this thread allocates over
+ * a run of steady-state ticks (ThreadMXBean.getThreadAllocatedBytes) and exits with status 1 if there were any.
+ * Towers fire as they would in a game; only spawning is left out, as the scenario has no waves.
+ * The count is the raw difference between two reads of the counter, with nothing taken off for reading it.
+ */
+public final class AllocationCheck {
+    /** Ticks run before counting, so the JIT has compiled (and escape analysed) the hot paths. */
+    private static final int WARMUP_TICKS = 20_000;
+
+    private AllocationCheck() {} // prevents instantiation from outside the class
+
+    /**
+     * Usage: AllocationCheck [ticks] [enemies] [projectiles] [towers] [level name]
+     */
+    public static void main(String[] args) throws SlickException, IOException {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int enemies = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int projectiles = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int towers = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        String levelName = args.length > 4 ? args[4] : "fourbythree2";
+
+        if (Benchmark.allocatedBytes() < 0) {
+            System.err.println("This JVM can't count allocated bytes per thread");
+            System.exit(2);
+        }
+        Benchmark.Scenario scenario = new Benchmark.Scenario(new LevelMap("assets/levels/" + levelName + ".tmx"),
+                levelName, enemies, projectiles, towers, null);
+
+        // Warm up on fresh worlds, as enemies leak and projectiles leave the map
+        for (int warmed = 0; warmed < WARMUP_TICKS; warmed += ticks) {
+            run(scenario.build(), 2 * ticks);
+        }
+        // The counted world runs a first batch uncounted too, so its stores have already grown to hold what's fired
+        World world = scenario.build();
+        run(world, ticks);
+        long before = Benchmark.allocatedBytes();
+        run(world, ticks);
+        long allocated = Benchmark.allocatedBytes() - before;
+
+        System.out.printf("Allocated %d bytes over %d ticks (%d enemies and %d projectiles left)%n",
+                allocated, ticks, world.getEnemies().size(), world.getProjectiles().size());
+        if (allocated > 0) {
+            System.err.println("The simulation allocates in steady state; profile it to find where");
+            System.exit(1);
+        }
+    }
+
+    /** Run ticks of the game logic. */
+    private static void run(World world, int ticks) throws SlickException {
+        for (int i = 0; i < ticks; i++) {
+            world.step(Simulation.TICK_MS);
+        }
+    }
+}
@@ -2,10 +2,8 @@
 
 package control;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.ArrayList;
-import java.util.Scanner;
+import java.io.IOException;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -23,13 +21,34 @@ public class App extends BasicGame {
     public static final float
         WINDOW_W = 1488, WINDOW_H = 1008, TILE_SIZE = 64/SCALE_FACTOR, SIDEBAR_W = TILE_SIZE*3,
         GRID_W = (WINDOW_W-SIDEBAR_W) / TILE_SIZE, GRID_H = WINDOW_H / TILE_SIZE;
+    /** Frames drawn per second while a level is open (the simulation ticks on its own thread, so more is wasted). */
+    private static final int TARGET_FPS = 60;
     private Menu menu;
     private World world;
+    /** Runs the world's ticks while a level is open. */
+    private SimulationThread sim;
     private Boolean gameOver = false;
+    /** Game speed, as the number of ticks run per tick interval (kept between levels). */
+    private int timeScale = 1;
+    private String timeScaleText = "";
+    /** Where to save a replay of each game, or null to not record. */
+    private String recordPath = null;
+    private InputLog inputLog = null;
+    private final Profiler profiler = new Profiler();
+    private boolean showProfiler = false;
 
+    /**
+     * Starts the game.
+     * Usage: App [--record replay file]
+     * In game, + and - double and halve the game speed (up to 32x), F3 toggles the profiler overlay
+     * and F4 saves the profiled frames to profile.csv.
+     */
     public static void main(String[] args) {
         try {
             App game = new App("Alistair VS The World");
+            if (args.length >= 2 && args[0].equals("--record")) {
+                game.recordPath = args[1];
+            }
             AppGameContainer appgc = new AppGameContainer(game);
             appgc.setDisplayMode((int)WINDOW_W, (int)WINDOW_H, false);
             appgc.start();
@@ -50,21 +69,35 @@ public class App extends BasicGame {
         System.out.println("GAME STATE: Initialising game...");
         gc.setShowFPS(false);
 
-        // Game update speed. 1 tick every 20 ms (50/sec)
-        gc.setMaximumLogicUpdateInterval(20);
-        gc.setMinimumLogicUpdateInterval(20);
+        // Start decoding sounds in the background
+        AudioController.load();
         
         // Open Main Menu
         menu = new Menu(getTitle(), (int)WINDOW_W, (int)WINDOW_H);
     }
 
     /**
-     * Should be called every 20ms. Executes a 'tick' operation.
+     * Called every frame. Handles input; the game itself ticks on the simulation thread.
      * @throws SlickException
      */
     @Override
     public void update(GameContainer gc, int delta) throws SlickException {
         Input input = gc.getInput();
+        long t = System.nanoTime();
+        AudioController.update();
+        profiler.record(Profiler.Phase.AUDIO, t);
+
+        if (input.isKeyPressed(Input.KEY_F3)) {
+            showProfiler = !showProfiler;
+        }
+        if (input.isKeyPressed(Input.KEY_F4)) {
+            try {
+                profiler.saveCsv("profile.csv");
+                System.out.println("Saved profile to profile.csv");
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
         
         if (menu != null) {
             Menu.Choice action = menu.update(input);
@@ -73,7 +106,7 @@ public class App extends BasicGame {
             }
             switch (action) {
                 case START:
-                    openLevel("fourbythree2");
+                    openLevel(gc, "fourbythree2");
                     break;
                 case OPTIONS:
                     // TODO: Add options (what settings would we have?) or just remove this
@@ -83,6 +116,8 @@ public class App extends BasicGame {
                     break;
             }
         } else if (world != null) {
+            sim.rethrowFailure();
+
             // Can only call inputs once
             boolean rightClick = input.isMousePressed(Input.MOUSE_RIGHT_BUTTON),
                     leftClick = input.isMousePressed(Input.MOUSE_LEFT_BUTTON),
@@ -90,21 +125,47 @@ public class App extends BasicGame {
             // Input is relative to the window, scale back up to the 'full' coordinates
             int mouseX = (int) (input.getMouseX()*SCALE_FACTOR), mouseY = (int) (input.getMouseY()*SCALE_FACTOR);
 
-            if (rightClick) { world.deselect(); }
             if (escape | gameOver) {
                 // TODO: put this in a function or something? (processInput() probs shouldn't return a string too)
+                sim.finish();
+                sim = null;
                 AudioController.stopAll();
+                saveRecording();
                 world = null;
                 menu = new Menu(getTitle(), (int)WINDOW_W, (int)WINDOW_H);
                 gameOver = false;
                 return; // Terminate the update at this point
             }
             
-            world.tick(delta);
-            world.processEnemies();
-            world.processProjectiles();
-            world.processTowers(mouseX, mouseY, leftClick);
-            world.processButtons(mouseX, mouseY,leftClick);
+            // Fast forward
+            if (input.isKeyPressed(Input.KEY_EQUALS) || input.isKeyPressed(Input.KEY_ADD)) {
+                setTimeScale(Math.min(timeScale * 2, SimulationThread.MAX_TIME_SCALE));
+            }
+            if (input.isKeyPressed(Input.KEY_MINUS) || input.isKeyPressed(Input.KEY_SUBTRACT)) {
+                setTimeScale(Math.max(timeScale / 2, 1));
+            }
+
+            // Only touch the world between ticks. Hover effects skip a frame rather than wait for a busy simulation,
+            // but clicks wait their turn so none are lost
+            boolean clicked = leftClick || rightClick;
+            t = System.nanoTime();
+            if (clicked) {
+                sim.getLock().lock();
+            }
+            if (clicked || sim.getLock().tryLock()) {
+                try {
+                    if (rightClick) { world.deselect(); }
+                    world.processTowers(mouseX, mouseY, leftClick);
+                    world.processButtons(mouseX, mouseY, leftClick);
+                    if (clicked) {
+                        // Show any tower bought or wave started straight away, rather than after the next tick
+                        sim.publish();
+                    }
+                } finally {
+                    sim.getLock().unlock();
+                }
+            }
+            profiler.record(Profiler.Phase.INPUT, t);
         }
     }
 
@@ -114,65 +175,72 @@ public class App extends BasicGame {
      */
     @Override
     public void render(GameContainer gc, Graphics g) throws SlickException {
+        long t = System.nanoTime();
         if (menu != null) {
             menu.render(g);
         }
+        Snapshot snapshot = null;
         if (world != null) {
+            // Draw moving sprites between their last two ticks, so motion is smooth at any frame rate.
+            // Fast-forwarded sprites move several ticks between snapshots, so those are drawn where they are
+            snapshot = sim.latest();
+            float alpha = sim.getTimeScale() > 1 ? 1
+                    : Math.min(1, (System.nanoTime() - snapshot.getTime()) / (Simulation.TICK_MS * 1e6f));
+
             // Draw the map in half scale. Sprite images will be scaled back up.
             // Sprite coordinates are in the default scale.
             g.scale(1f/SCALE_FACTOR, 1f/SCALE_FACTOR);
-            world.render(g);
+            world.render(g, snapshot, alpha);
             g.scale(SCALE_FACTOR, SCALE_FACTOR);
+
+            if (timeScale > 1) {
+                g.setColor(Color.white);
+                g.drawString(timeScaleText, 10, gc.getHeight() - 30);
+            }
         }
+        profiler.record(Profiler.Phase.RENDER, t);
+
+        if (showProfiler) {
+            profiler.render(g, 10, 10);
+        }
+        profiler.endFrame(snapshot);
     }
     
     
     
     /** Opens a new level and creates a World to manage it.
      * Also minimises the current menu and changes focus to the level.
+     * Caps the frame rate once the simulation thread starts, so rendering doesn't spin a core redrawing the same
+     * snapshot.
      */
-    private void openLevel(String levelName) throws SlickException{
+    private void openLevel(GameContainer gc, String levelName) throws SlickException{
         // Initialize the tiled map for the level
-        TiledMap tiledMap = new TiledMap("assets/levels/" + levelName + ".tmx");
+        String levelPath = "assets/levels/" + levelName + ".tmx";
+        TiledMap tiledMap = new TiledMap(levelPath);
+        LevelMap level = new LevelMap(levelPath);
+        String wavePath = "assets/waves/game1.txt";
+
+        // Seed the game so it can be replayed
+        long seed = System.nanoTime();
+        Util.setSeed(seed);
         
         // Load in wave info
-        try (Scanner scanner = new Scanner(new File("assets/waves/game1.txt"))) {            
-            // Read line-by-line
-            scanner.useDelimiter("[\\r\\n;]+");
-
-            ArrayList<Wave> waves = new ArrayList<Wave>();
-
-            // Wave-by-wave
-            while (scanner.hasNext()) {
-                String wave = scanner.next();
-                Wave currWave = new Wave();
-                waves.add(currWave);
-
-                // Split into spawn sequences - enemytype/enemynum/spawnrate/starttime
-                String[] spawnSequences = wave.split(" ");
-                int seqs = spawnSequences.length;
-
-                for (int i = seqs-1; i >= 0; i--) {
-                    String seq = spawnSequences[i];
-
-                    // Extract info
-                    String[] seqInfo = seq.split("/");
-                    String enemy = seqInfo[0];
-                    int enemyNum = Integer.parseInt(seqInfo[1]);
-                    float spawnRate = Float.parseFloat(seqInfo[2]), spawnTime = Float.parseFloat(seqInfo[3]);
-
-                    // Generate and add spawn individual instructions
-                    for (int j = enemyNum; j >= 1; j--) {
-                        currWave.addInstruction(enemy, spawnTime*1000);
-                        spawnTime += spawnRate;
-                    }
-                }
-            }
+        try {
+            List<Wave> waves = Wave.load(wavePath);
             
             // Create World and get rid of Menu
-            world = new World((int)WINDOW_W, (int)WINDOW_H, (int)SIDEBAR_W, tiledMap, waves);
+            world = new World((int)WINDOW_W, (int)WINDOW_H, (int)SIDEBAR_W, level, tiledMap, waves);
             menu = null;
-        } catch (FileNotFoundException e) {
+            if (recordPath != null) {
+                inputLog = new InputLog(seed, levelPath, wavePath);
+                world.setRecorder(inputLog);
+            }
+            sim = new SimulationThread(world, profiler);
+            sim.setTimeScale(timeScale);
+            sim.start();
+            gc.setVSync(true);
+            gc.setTargetFrameRate(TARGET_FPS);
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
@@ -182,10 +250,36 @@ public class App extends BasicGame {
      */
     @Override
     public boolean closeRequested() {
+        if (sim != null) {
+            sim.finish();
+        }
+        saveRecording();
         System.out.println("GAME STATE: Exiting game");
         System.exit(0);
         return false; // only here to placate the compiler
     }
 
+    /** Change the game speed (see SimulationThread.setTimeScale). */
+    private void setTimeScale(int timeScale) {
+        this.timeScale = timeScale;
+        timeScaleText = timeScale + "x speed";
+        sim.setTimeScale(timeScale);
+    }
+
+    /** Finish recording the current game (if there is one) and save the replay. */
+    private void saveRecording() {
+        if (inputLog == null || world == null) {
+            return;
+        }
+        world.endRecording();
+        try {
+            inputLog.save(recordPath);
+            System.out.println("GAME STATE: Saved replay to " + recordPath);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        inputLog = null;
+    }
+
     public void setGameOver(Boolean gameOver) { this.gameOver = gameOver; }
 }
\ No newline at end of file
@@ -1,52 +1,167 @@
 package control;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.lwjgl.openal.AL10;
 import org.newdawn.slick.*;
+import org.newdawn.slick.openal.OggData;
+import org.newdawn.slick.openal.OggDecoder;
+import org.newdawn.slick.openal.SoundStore;
 
 /**
  * Stores all sound files, and provides a method to play them.
+ * Files are decoded on background threads and handed to OpenAL on the game thread (in update) once they're ready.
+ * Sounds heard every game are decoded as soon as loading starts; the rest are only decoded the first time they're played.
+ * Plays are collected and started together in update: repeats of an event in the same frame are merged,
+ * and frequent effects are rate limited and only get voices that nothing more important needs.
+ * Sounds can be played from the simulation thread, so the public methods lock the class.
  */
 public final class AudioController {
-    private static HashMap<String, Sound> singleSounds = new HashMap<String, Sound>();
-    private static HashMap<String, Sound[]> multiSounds = new HashMap<String, Sound[]>();
-    private static HashMap<String, Boolean> hasPlayed = new HashMap<>();
+    private static final String AUDIO_PATH = "assets/audio";
+    /** Sounds (or folders of sounds) to decode up front. */
+    private static final Set<String> PRELOAD = new HashSet<>(Arrays.asList(
+            "intro", "lowpop", "bubblepop", "python", "commerce", "gameover"));
+
+    /** How much a sound matters when there aren't enough voices to go round. */
+    private enum Priority {
+        /** Frequent effects: rate limited, and never take the last few voices. */
+        LOW(50),
+        NORMAL(0),
+        /** Always played, cutting off a low priority sound if need be. */
+        HIGH(0);
 
+        /** Shortest time between two plays of the same event (in ms). */
+        final int minGap;
+        Priority(int minGap) {
+            this.minGap = minGap;
+        }
+    }
+    private static final Map<String, Priority> PRIORITIES = new HashMap<>();
     static {
-        // Load audio files
-        File folder = new File("assets/audio");
-        try {
-            for (File f : folder.listFiles()) {
-                if (f.isFile()) {
-                    // Get file name without extension
-                    String name = f.getName().replaceFirst("[.][^.]+$", "");
-                    // Add the sound to the hash map
-                    singleSounds.put(name.toLowerCase(), new Sound(f.getPath()));
-                    hasPlayed.put(name.toLowerCase(), false);
-                } else {
-                    // Add all the sounds in the subfolder to an array
-                    Sound[] new_sounds = Arrays.stream(f.listFiles()).filter(file -> file.isFile()).map(file -> {
-                        try {
-                            return new Sound(file.getPath());
-                        } catch (SlickException e) {
-                            e.printStackTrace();
-                            return null;
-                        }
-                    }).toArray(Sound[]::new);
-                    multiSounds.put(f.getName().toLowerCase(), new_sounds);
-                    hasPlayed.put(f.getName().toLowerCase(), false);
+        PRIORITIES.put("intro", Priority.HIGH);
+        PRIORITIES.put("gameover", Priority.HIGH);
+        PRIORITIES.put("lowpop", Priority.LOW);
+        PRIORITIES.put("bubblepop", Priority.LOW);
+        PRIORITIES.put("cartoonpop", Priority.LOW);
+    }
+    /** Voices kept free of low priority sounds. */
+    private static final int RESERVED_VOICES = 2;
+
+    /** A sound file and how far through loading it is. */
+    private static class Clip {
+        final File file;
+        final boolean preload;
+        /** WAV data decoded on a worker thread, or null if decoding hasn't started. */
+        Future<byte[]> decoding;
+        /** Time spent reading and decoding (written by the worker before its future completes). */
+        long decodeNanos;
+        Sound sound;
+        boolean failed = false, playWhenLoaded = false;
+
+        Clip(File file, boolean preload) {
+            this.file = file;
+            this.preload = preload;
+        }
+    }
+
+    private static HashMap<String, Clip> singleSounds = new HashMap<String, Clip>();
+    private static HashMap<String, Clip[]> multiSounds = new HashMap<String, Clip[]>();
+    private static HashMap<String, Boolean> hasPlayed = new HashMap<>();
+    /** Clips being decoded, checked by update. Only touched on the game thread. */
+    private static List<Clip> pending = new ArrayList<>();
+    private static ExecutorService decoders;
+    /** Plays asked for since the last update, by event, in the order they were first asked for. */
+    private static LinkedHashMap<String, Clip> requested = new LinkedHashMap<>();
+    /** When each event was last played (in ms). */
+    private static HashMap<String, Long> lastPlayed = new HashMap<>();
+    /** Low priority clips in the order they were played, so the oldest can be cut off. */
+    private static ArrayDeque<Clip> lowPlaying = new ArrayDeque<>();
+    private static long dropped = 0, coalesced = 0;
+
+    private AudioController() {} // prevents instantiation from outside the class
+
+    /**
+     * Find every audio file and start decoding the common ones in the background.
+     * Call once from the game thread after the container has set up OpenAL.
+     */
+    public static void load() {
+        if (decoders != null) {
+            return;
+        }
+        // Leave a core for the game thread
+        decoders = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), r -> {
+            Thread t = new Thread(r, "Audio decoder");
+            t.setDaemon(true);
+            return t;
+        });
+
+        for (File f : new File(AUDIO_PATH).listFiles()) {
+            if (f.isFile()) {
+                // Get file name without extension
+                String name = f.getName().replaceFirst("[.][^.]+$", "").toLowerCase();
+                Clip clip = new Clip(f, PRELOAD.contains(name));
+                singleSounds.put(name, clip);
+                hasPlayed.put(name, false);
+                if (clip.preload) {
+                    decode(clip);
+                }
+            } else {
+                // Add all the sounds in the subfolder to an array
+                String name = f.getName().toLowerCase();
+                Clip[] clips = Arrays.stream(f.listFiles()).filter(file -> file.isFile())
+                        .map(file -> new Clip(file, PRELOAD.contains(name))).toArray(Clip[]::new);
+                multiSounds.put(name, clips);
+                hasPlayed.put(name, false);
+                for (Clip clip : clips) {
+                    if (clip.preload) {
+                        decode(clip);
+                    }
                 }
             }
-        } catch (SlickException e) {
-            e.printStackTrace();
         }
 
         // TODO: Find some music? Can add an array of songs to a musicLoop() method.
     }
-    
-    private AudioController() {} // prevents instantiation from outside the class
+
+    /**
+     * Hand any sounds that have finished decoding to OpenAL, playing the ones asked for while they loaded,
+     * then start the sounds asked for since the last update. Call once per frame.
+     */
+    public static synchronized void update() {
+        for (Iterator<Clip> it = pending.iterator(); it.hasNext();) {
+            Clip clip = it.next();
+            if (clip.decoding.isDone()) {
+                it.remove();
+                upload(clip);
+                if (clip.sound != null && clip.playWhenLoaded) {
+                    clip.sound.play();
+                }
+            }
+        }
+        playRequested();
+    }
 
     /**
      * Plays a sound.
@@ -54,19 +169,19 @@ public final class AudioController {
      * @param event In lowercase, the name of the game event/sound asset to play. Can specify a folder.
      * @param allowRepeat Lets this sound be played again until the next reset()
      */
-    public static void play(String event, boolean allowRepeat) {
+    public static synchronized void play(String event, boolean allowRepeat) {
         // TODO: Add pitch and volume control
         // Play the sound
-        Sound[] list = multiSounds.get(event);
+        Clip[] list = multiSounds.get(event);
         if (list != null) {
-            list[Util.rand(list.length)].play();
+            request(event, list[Util.rand(list.length)]);
         } else {
-            Sound single = singleSounds.get(event);
+            Clip single = singleSounds.get(event);
             if (single != null) {
                 // See if the sound has already been played
                 if(hasPlayed.get(event)) { return; }
 
-                single.play();
+                request(event, single);
 
                 // Flag that this event has been played if repeats are not allowed
                 if (!allowRepeat) { hasPlayed.put(event, true); }
@@ -87,13 +202,19 @@ public final class AudioController {
     /**
      * Stops all currently playing sounds.
      */
-    public static void stopAll() {
-        for (Sound s : singleSounds.values()) {
-            s.stop();
+    public static synchronized void stopAll() {
+        requested.clear();
+        lowPlaying.clear();
+        for (Clip c : singleSounds.values()) {
+            if (c.sound != null) {
+                c.sound.stop();
+            }
         }
-        for (Sound[] list : multiSounds.values()) {
-            for (Sound s : list) {
-                s.stop();
+        for (Clip[] list : multiSounds.values()) {
+            for (Clip c : list) {
+                if (c.sound != null) {
+                    c.sound.stop();
+                }
             }
         }
     }
@@ -101,9 +222,166 @@ public final class AudioController {
     /**
      * Resets the audio controller by allowing all sounds to be played again.
      */
-    public static void reset() {
+    public static synchronized void reset() {
         for(String sound: hasPlayed.keySet()) {
             hasPlayed.put(sound, false);
         }
     }
+
+    /** Number of plays skipped by rate limits or for lack of voices. */
+    public static long getDropped() { return dropped; }
+    /** Number of plays merged into another play of the same event in the same frame. */
+    public static long getCoalesced() { return coalesced; }
+
+    /** Queue a clip to be played on the next update, merging it with any play of the same event already queued. */
+    private static void request(String event, Clip clip) {
+        if (requested.containsKey(event)) {
+            coalesced++;
+        } else {
+            requested.put(event, clip);
+        }
+    }
+
+    /** Play the queued clips, most important first, within each event's rate limit and the free voices. */
+    private static void playRequested() {
+        if (requested.isEmpty()) {
+            return;
+        }
+        SoundStore store = SoundStore.get();
+        // Source 0 is for music and SoundStore never uses the last one for effects
+        int voices = store.getSourceCount() - 2, busy = busyVoices(store);
+        long now = System.nanoTime() / 1000000;
+
+        Priority[] priorities = Priority.values();
+        for (int p = priorities.length - 1; p >= 0; p--) {
+            Priority priority = priorities[p];
+            for (Map.Entry<String, Clip> entry : requested.entrySet()) {
+                if (PRIORITIES.getOrDefault(entry.getKey(), Priority.NORMAL) != priority) {
+                    continue;
+                }
+                Long last = lastPlayed.get(entry.getKey());
+                if (priority == Priority.HIGH) {
+                    // Make room by cutting off the oldest low priority sound
+                    if (busy >= voices && stopOldestLow()) {
+                        busy--;
+                    }
+                } else if ((last != null && now - last < priority.minGap) || busy >= voices
+                        || (priority == Priority.LOW && busy >= voices - RESERVED_VOICES)) {
+                    dropped++;
+                    continue;
+                }
+
+                play(entry.getValue());
+                lastPlayed.put(entry.getKey(), now);
+                busy++;
+                if (priority == Priority.LOW) {
+                    // Only the last few can still be playing
+                    if (lowPlaying.size() >= Math.max(voices, 1)) {
+                        lowPlaying.pollFirst();
+                    }
+                    lowPlaying.addLast(entry.getValue());
+                }
+            }
+        }
+        requested.clear();
+    }
+
+    /** Count the effect sources that are playing. */
+    private static int busyVoices(SoundStore store) {
+        int busy = 0;
+        for (int i = 1; i < store.getSourceCount() - 1; i++) {
+            if (AL10.alGetSourcei(store.getSource(i), AL10.AL_SOURCE_STATE) == AL10.AL_PLAYING) {
+                busy++;
+            }
+        }
+        return busy;
+    }
+
+    /** Stop the oldest low priority sound still playing. */
+    private static boolean stopOldestLow() {
+        while (!lowPlaying.isEmpty()) {
+            Clip clip = lowPlaying.pollFirst();
+            if (clip.sound != null && clip.sound.playing()) {
+                clip.sound.stop();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Play a clip, loading it first if need be.
+     * A preloaded clip that's still decoding is waited for; a rarely used one plays once it's ready instead.
+     */
+    private static void play(Clip clip) {
+        if (clip.sound == null && !clip.failed) {
+            if (clip.decoding == null) {
+                decode(clip);
+            }
+            if (!clip.preload) {
+                clip.playWhenLoaded = true;
+                return;
+            }
+            pending.remove(clip);
+            upload(clip);
+        }
+        if (clip.sound != null) {
+            clip.sound.play();
+        }
+    }
+
+    /** Start decoding a clip on a worker thread. */
+    private static void decode(Clip clip) {
+        clip.decoding = decoders.submit(() -> {
+            long start = System.nanoTime();
+            byte[] data;
+            if (isOgg(clip.file)) {
+                try (InputStream in = new BufferedInputStream(new FileInputStream(clip.file))) {
+                    data = toWav(new OggDecoder().getData(in));
+                }
+            } else {
+                data = Files.readAllBytes(clip.file.toPath());
+            }
+            clip.decodeNanos = System.nanoTime() - start;
+            return data;
+        });
+        pending.add(clip);
+    }
+
+    /** Wait for a clip to finish decoding and create its OpenAL buffer. Must be called on the game thread. */
+    private static void upload(Clip clip) {
+        try {
+            byte[] data = clip.decoding.get();
+            long start = System.nanoTime();
+            // Decoded OGGs are WAV data, which SoundStore copies straight into a buffer
+            String ref = isOgg(clip.file) ? clip.file.getPath() + ".wav" : clip.file.getPath();
+            clip.sound = new Sound(new ByteArrayInputStream(data), ref);
+            System.out.printf("Loaded %s: decoded in %.1f ms, uploaded in %.1f ms%n", clip.file.getPath(),
+                    clip.decodeNanos / 1e6, (System.nanoTime() - start) / 1e6);
+        } catch (InterruptedException | ExecutionException | SlickException e) {
+            e.printStackTrace();
+            clip.failed = true;
+        }
+    }
+
+    private static boolean isOgg(File file) {
+        return file.getName().toLowerCase().endsWith(".ogg");
+    }
+
+    /** Wrap decoded 16-bit samples in a WAV header. */
+    private static byte[] toWav(OggData ogg) {
+        ByteBuffer samples = ogg.data.duplicate();
+        int size = samples.remaining() & ~1; // whole samples only
+        ByteBuffer wav = ByteBuffer.allocate(44 + size).order(ByteOrder.LITTLE_ENDIAN);
+        wav.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt(36 + size).put("WAVE".getBytes(StandardCharsets.US_ASCII));
+        wav.put("fmt ".getBytes(StandardCharsets.US_ASCII)).putInt(16).putShort((short) 1).putShort((short) ogg.channels)
+                .putInt(ogg.rate).putInt(ogg.rate * ogg.channels * 2).putShort((short) (ogg.channels * 2)).putShort((short) 16);
+        wav.put("data".getBytes(StandardCharsets.US_ASCII)).putInt(size);
+        // The decoder gives samples in native byte order, but WAV is always little endian
+        samples.order(ByteOrder.nativeOrder());
+        for (int i = 0; i < size / 2; i++) {
+            wav.putShort(samples.getShort());
+        }
+        return wav.array();
+    }
 }
@@ -0,0 +1,220 @@
+package control;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.newdawn.slick.SlickException;
+
+import game.Tower;
+
+/**
+ * Plays many headless games at once to test wave balance.
+ * Each game gets its own World and is played on a fork-join pool, one game per worker at a time.
+ * Results are merged in game order, so a run with the same seed always gives the same report.
+ */
+public class BalanceRunner {
+    /** Decides where towers go before each wave. */
+    public interface Placement {
+        /**
+         * Buy towers for the coming wave.
+         * @param world World to place towers in
+         * @param wave Number of the wave about to start (from 1)
+         * @param rng Random source for this game
+         */
+        void place(World world, int wave, Random rng) throws SlickException;
+    }
+
+    /** Buys towers of random types on random buildable tiles until a few attempts in a row fail. */
+    public static final Placement RANDOM = (world, wave, rng) -> {
+        final int MAX_FAILS = 10;
+        Tower.Type[] types = Tower.Type.values();
+        int fails = 0;
+        while (fails < MAX_FAILS) {
+            int x = rng.nextInt(world.getGridWidth()), y = rng.nextInt(world.getGridHeight());
+            if (world.placeTower(types[rng.nextInt(types.length)], x, y)) {
+                fails = 0;
+            } else {
+                fails++;
+            }
+        }
+    };
+
+    /** Per-wave totals over a set of games. */
+    public static class Report {
+        private final int[] played, survived;
+        private final long[] money, leaks;
+        private int games = 0;
+
+        Report(int waves) {
+            played = new int[waves];
+            survived = new int[waves];
+            money = new long[waves];
+            leaks = new long[waves];
+        }
+
+        /** Add the totals of another report to this one. */
+        void merge(Report other) {
+            games += other.games;
+            for (int i = 0; i < played.length; i++) {
+                played[i] += other.played[i];
+                survived[i] += other.survived[i];
+                money[i] += other.money[i];
+                leaks[i] += other.leaks[i];
+            }
+        }
+
+        /** Print a table of survival rate, average money at the end of the wave and average leaks per wave. */
+        public void print() {
+            System.out.printf("%d games%n%5s %8s %9s %10s %8s%n", games, "wave", "played", "survived", "avg money", "leaks");
+            for (int i = 0; i < played.length && played[i] > 0; i++) {
+                System.out.printf("%5d %8d %8.1f%% %10.1f %8.2f%n", i + 1, played[i],
+                        100.0 * survived[i] / played[i], (double) money[i] / played[i], (double) leaks[i] / played[i]);
+            }
+        }
+
+        public int getGames() { return games; }
+        public double getSurvivalRate(int wave) { return played[wave - 1] == 0 ? 0 : (double) survived[wave - 1] / played[wave - 1]; }
+    }
+
+    private final LevelMap level;
+    private final String wavePath;
+    private final int waveCount;
+    private final Placement placement;
+    private final long seed;
+
+    /**
+     * @param levelPath Path to the level's .tmx file
+     * @param wavePath Path to the wave file
+     * @param placement How towers get placed
+     * @param seed Base seed; game i uses seed + i
+     */
+    public BalanceRunner(String levelPath, String wavePath, Placement placement, long seed)
+            throws SlickException, IOException {
+        this.level = new LevelMap(levelPath);
+        this.wavePath = wavePath;
+        this.waveCount = Wave.load(wavePath).size();
+        this.placement = placement;
+        this.seed = seed;
+    }
+
+    /**
+     * Play a batch of games.
+     * @param games Number of games
+     * @param threads Number of worker threads
+     */
+    public Report run(int games, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new Batch(0, games));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Play a single game and record it in a fresh report. */
+    private Report playGame(int game) throws SlickException, IOException {
+        Report report = new Report(waveCount);
+        report.games = 1;
+        Random rng = new Random(seed + game);
+        Simulation sim = new Simulation(level, Wave.load(wavePath));
+        World world = sim.getWorld();
+
+        while (!world.isGameOver() && world.hasNextWave()) {
+            int wave = world.getWaveNum() + 1, leaksBefore = world.getLeaks();
+            placement.place(world, wave, rng);
+            sim.playWave();
+            report.played[wave - 1]++;
+            report.survived[wave - 1] += world.isGameOver() ? 0 : 1;
+            report.money[wave - 1] += world.getMoney();
+            report.leaks[wave - 1] += world.getLeaks() - leaksBefore;
+        }
+        return report;
+    }
+
+    /** Plays a range of games, splitting it in half until it's small enough to play directly. */
+    private class Batch extends RecursiveTask<Report> {
+        private static final long serialVersionUID = 1L;
+        private static final int GAMES_PER_TASK = 4;
+        private final int from, to;
+
+        Batch(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Report compute() {
+            if (to - from <= GAMES_PER_TASK) {
+                Report report = new Report(waveCount);
+                for (int i = from; i < to; i++) {
+                    try {
+                        report.merge(playGame(i));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } catch (SlickException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return report;
+            }
+            int mid = (from + to) >>> 1;
+            Batch left = new Batch(from, mid);
+            left.fork();
+            Report report = new Batch(mid, to).compute();
+            report.merge(left.join());
+            return report;
+        }
+    }
+
+    /**
+     * Load tower placements from a script file.
+     * Each line is "wave type x y", e.g. "1 BUBBLE 4 6" buys a bubble sort tower at (4, 6) before wave 1.
+     * Lines starting with // are ignored.
+     */
+    public static Placement loadScript(String path) throws FileNotFoundException {
+        List<String[]> lines = new ArrayList<>();
+        try (Scanner scanner = new Scanner(new File(path))) {
+            while (scanner.hasNextLine()) {
+                String line = scanner.nextLine().trim();
+                if (!line.isEmpty() && !line.startsWith("//")) {
+                    lines.add(line.split("\\s+"));
+                }
+            }
+        }
+        return (world, wave, rng) -> {
+            for (String[] line : lines) {
+                if (Integer.parseInt(line[0]) == wave) {
+                    world.placeTower(Tower.Type.valueOf(line[1].toUpperCase()),
+                            Integer.parseInt(line[2]), Integer.parseInt(line[3]));
+                }
+            }
+        };
+    }
+
+    /**
+     * Run a batch and print the report.
+     * Usage: BalanceRunner [games] [level name] [wave file] [placement script]
+     * Towers are placed randomly if no script is given.
+     */
+    public static void main(String[] args) throws SlickException, IOException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        String levelName = args.length > 1 ? args[1] : "fourbythree2";
+        String wavePath = args.length > 2 ? args[2] : "assets/waves/game1.txt";
+        Placement placement = args.length > 3 ? loadScript(args[3]) : RANDOM;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        long start = System.nanoTime();
+        BalanceRunner runner = new BalanceRunner("assets/levels/" + levelName + ".tmx", wavePath, placement, 0);
+        Report report = runner.run(games, threads);
+        report.print();
+        System.out.printf("%d games on %d threads in %.1f s%n", games, threads, (System.nanoTime() - start) / 1e9);
+    }
+}
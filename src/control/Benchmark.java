@@ -0,0 +1,371 @@
+package control;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.newdawn.slick.SlickException;
+
+import game.Enemy;
+import game.Projectile;
+import game.Tower;
+
+/**
+ * Times the simulation's hot paths on headless worlds filled with a fixed number of enemies, projectiles and towers.
+ * Every benchmark is warmed up first, then measured over several iterations; each iteration starts from a freshly
+ * built scenario (untimed) and times a fixed number of operations on it, so state drift (enemies leaking, projectiles
+ * hitting) stays small and equal between runs.
+ * Reports throughput, time per operation and bytes allocated per operation.
+ */
+public final class Benchmark {
+    private static final int WARMUP = 5, ITERATIONS = 10;
+    /** Operations timed per iteration (50 ticks is one second of game time). */
+    private static final int OPS = 50;
+    /** Speed of the generated projectiles, in pixels per tick. */
+    private static final float PROJECTILE_SPEED = 6;
+    /** Enemies per sequence in the generated waves. */
+    private static final int SEQUENCE_LENGTH = 10;
+
+    /** Results are written here so the JIT can't drop the work that produced them. */
+    static volatile long sink;
+    /** Per-thread allocation counter, or null if the JVM can't count (looked up once, as the lookup allocates). */
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+    /** Bytes allocated by reading the allocation counter itself, taken off every measurement. */
+    static final long ALLOCATION_OVERHEAD = allocationOverhead();
+
+    private Benchmark() {} // prevents instantiation from outside the class
+
+    /** Size of a generated world (also used by AllocationCheck). */
+    static class Scenario {
+        final LevelMap level;
+        final String levelName;
+        final int enemies, projectiles, towers;
+        /** Pool the world's tick is split across, or null for a serial tick. */
+        final ForkJoinPool pool;
+
+        Scenario(LevelMap level, String levelName, int enemies, int projectiles, int towers, ForkJoinPool pool) {
+            this.level = level;
+            this.levelName = levelName;
+            this.enemies = enemies;
+            this.projectiles = projectiles;
+            this.towers = towers;
+            this.pool = pool;
+        }
+
+        /**
+         * Build a world with enemies spread along the path, towers on the first buildable tiles and projectiles
+         * flying in random directions. Always gives the same world for the same scenario.
+         */
+        World build() throws SlickException {
+            World world = new World(level, new ArrayList<>());
+            world.setPool(pool);
+            world.setMoney(Integer.MAX_VALUE / 2);
+            Tower.Type[] towerTypes = Tower.Type.values();
+            int placed = 0;
+            for (int x = 0; x < world.getGridWidth() && placed < towers; x++) {
+                for (int y = 0; y < world.getGridHeight() && placed < towers; y++) {
+                    if (world.placeTower(towerTypes[placed % towerTypes.length], x, y)) {
+                        placed++;
+                    }
+                }
+            }
+
+            // Path tiles, leaving out the last couple before Alistair so nothing leaks straight away
+            List<int[]> path = new ArrayList<>();
+            for (int x = 0; x < world.getGridWidth(); x++) {
+                for (int y = 0; y < world.getGridHeight(); y++) {
+                    int dist = world.getPath().getDistance(x, y);
+                    if (dist != FlowField.UNREACHABLE && dist > 2) {
+                        path.add(new int[] {x, y});
+                    }
+                }
+            }
+            if (path.isEmpty()) {
+                throw new IllegalArgumentException(levelName + " has no path to fill with enemies");
+            }
+            Enemy.Type[] enemyTypes = Enemy.Type.values();
+            for (int i = 0; i < enemies; i++) {
+                int[] tile = path.get(i % path.size());
+                world.spawnEnemy(world.toPos(tile[0]), world.toPos(tile[1]), enemyTypes[i % enemyTypes.length]);
+            }
+
+            Random rng = new Random(0);
+            float mapW = world.getGridWidth() * world.getTileSize(), mapH = world.getGridHeight() * world.getTileSize();
+            for (int i = 0; i < projectiles; i++) {
+                double angle = rng.nextDouble() * 2 * Math.PI;
+                float vx = (float) Math.cos(angle) * PROJECTILE_SPEED, vy = (float) Math.sin(angle) * PROJECTILE_SPEED;
+                world.addProjectile(Projectile.Kind.BALL, rng.nextFloat() * mapW, rng.nextFloat() * mapH, vx, vy);
+            }
+
+            // Bucket the enemies so tower queries work before the first timed operation
+            world.tick(0);
+            return world;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%5d %6d %5d %3d  %-14s", enemies, projectiles, towers,
+                    pool == null ? 1 : pool.getParallelism(), levelName);
+        }
+    }
+
+    /** One benchmarked operation. */
+    private abstract static class Bench {
+        final String name;
+        World world;
+
+        Bench(String name) {
+            this.name = name;
+        }
+
+        /** Prepare an iteration (untimed). */
+        void setup(Scenario scenario) throws SlickException {
+            world = scenario.build();
+        }
+
+        /** The operation being timed. */
+        abstract void run() throws SlickException;
+    }
+
+    /** Every benchmark, in the order they're reported. */
+    private static List<Bench> benches() {
+        List<Bench> benches = new ArrayList<>();
+        benches.add(new Bench("processEnemies") {
+            void run() { world.processEnemies(); }
+        });
+        benches.add(new Bench("enemy.advance") {
+            void run() {
+                world.getEnemies().advance(0, world.getEnemies().size(), world);
+            }
+        });
+        benches.add(new Bench("processProjectiles") {
+            void run() { world.processProjectiles(); }
+        });
+        benches.add(new Bench("tick") {
+            void run() throws SlickException { world.tick(Simulation.TICK_MS); }
+        });
+        benches.add(findTarget(Tower.Targeting.FIRST));
+        benches.add(findTarget(Tower.Targeting.CLOSEST));
+        benches.add(new Bench("wave.poll") {
+            private Wave[] waves;
+            private int next;
+
+            @Override
+            void setup(Scenario scenario) {
+                // A fresh wave per operation, as big as the scenario's enemy count
+                Enemy.Type[] types = Enemy.Type.values();
+                waves = new Wave[OPS];
+                next = 0;
+                for (int i = 0; i < OPS; i++) {
+                    waves[i] = new Wave();
+                    for (int j = 0; j * SEQUENCE_LENGTH < scenario.enemies; j++) {
+                        waves[i].addSequence(new Wave.Sequence(types[j % types.length],
+                                Math.min(SEQUENCE_LENGTH, scenario.enemies - j * SEQUENCE_LENGTH), 0.5f, j * 0.25f, 0));
+                    }
+                }
+            }
+
+            void run() {
+                Wave wave = waves[next++];
+                long polled = 0;
+                for (long timer = 0; !wave.isFinished(); timer += Simulation.TICK_MS) {
+                    while (wave.poll(timer) != null) {
+                        polled++;
+                    }
+                }
+                sink += polled;
+            }
+        });
+        benches.add(new Bench("checkCollision") {
+            void run() {
+                // Every projectile against every enemy, which is what the spatial hash saves
+                EnemyStore enemies = world.getEnemies();
+                ProjectileStore projectiles = world.getProjectiles();
+                long hits = 0;
+                for (int i = 0; i < projectiles.size(); i++) {
+                    float x = projectiles.getX(i), y = projectiles.getY(i);
+                    int halfW = projectiles.getHalfWidth(i), halfH = projectiles.getHalfHeight(i);
+                    for (int j = 0; j < enemies.size(); j++) {
+                        if (enemies.touches(j, x, y, halfW, halfH)) {
+                            hits++;
+                            break;
+                        }
+                    }
+                }
+                sink += hits;
+            }
+        });
+        benches.add(new Bench("spatialHash") {
+            private SpatialHash grid;
+
+            @Override
+            void setup(Scenario scenario) throws SlickException {
+                super.setup(scenario);
+                grid = new SpatialHash(world);
+            }
+
+            void run() {
+                grid.rebuild(world.getEnemies());
+                ProjectileStore projectiles = world.getProjectiles();
+                long hits = 0;
+                for (int i = 0; i < projectiles.size(); i++) {
+                    if (grid.firstCollision(projectiles.getX(i), projectiles.getY(i),
+                            projectiles.getHalfWidth(i), projectiles.getHalfHeight(i)) >= 0) {
+                        hits++;
+                    }
+                }
+                sink += hits;
+            }
+        });
+        return benches;
+    }
+
+    /** Every tower looking for a target with the given policy. */
+    private static Bench findTarget(Tower.Targeting policy) {
+        return new Bench("findTarget " + policy.toString().toLowerCase()) {
+            void run() {
+                List<Tower> towers = world.getTowers();
+                long found = 0;
+                for (int i = 0; i < towers.size(); i++) {
+                    Tower t = towers.get(i);
+                    if (world.findTarget(t.getX(), t.getY(), t.getRange(), policy) >= 0) {
+                        found++;
+                    }
+                }
+                sink += found;
+            }
+        };
+    }
+
+    /**
+     * Warm up and measure one benchmark on one scenario, then print a line of results.
+     */
+    private static void measure(Bench bench, Scenario scenario) throws SlickException {
+        for (int i = 0; i < WARMUP; i++) {
+            iteration(bench, scenario, null);
+        }
+        long[] nanos = new long[ITERATIONS], bytes = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long[] result = iteration(bench, scenario, new long[2]);
+            nanos[i] = result[0];
+            bytes[i] = result[1];
+        }
+
+        double mean = 0, best = Double.MAX_VALUE, allocated = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            double perOp = (double) nanos[i] / OPS;
+            mean += perOp / ITERATIONS;
+            best = Math.min(best, perOp);
+            allocated += (double) bytes[i] / OPS / ITERATIONS;
+        }
+        System.out.printf("%-20s %s %12.0f %10.2f %10.2f %10s%n", bench.name, scenario, 1e9 / mean, mean / 1e3, best / 1e3,
+                allocated < 0 ? "n/a" : String.format("%.0f", allocated));
+    }
+
+    /**
+     * Set up and time one iteration.
+     * @param result Array to put the elapsed nanoseconds and allocated bytes in, or null when warming up
+     */
+    private static long[] iteration(Bench bench, Scenario scenario, long[] result) throws SlickException {
+        bench.setup(scenario);
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int op = 0; op < OPS; op++) {
+            bench.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocatedAfter = allocatedBytes();
+        if (result != null) {
+            result[0] = elapsed;
+            result[1] = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore - ALLOCATION_OVERHEAD;
+        }
+        return result;
+    }
+
+    /** Bytes allocated so far by this thread, or -1 if the JVM can't tell. */
+    static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    /** Bytes allocated between two back-to-back reads of allocatedBytes (the smallest of a few tries). */
+    private static long allocationOverhead() {
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            long before = allocatedBytes();
+            overhead = Math.min(overhead, allocatedBytes() - before);
+        }
+        return Math.max(overhead, 0);
+    }
+
+    /** Parse a comma separated list of numbers, e.g. "100,1000". */
+    private static int[] parseCounts(String list) {
+        String[] parts = list.split(",");
+        int[] counts = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            counts[i] = Integer.parseInt(parts[i].trim());
+        }
+        return counts;
+    }
+
+    /**
+     * Run every benchmark over every combination of the given sizes.
+     * Usage: Benchmark [enemies] [projectiles] [towers] [level names] [threads]
+     * Each argument is a comma separated list, e.g. "Benchmark 100,1000 100,1000 20 fourbythree2,level1 1,8".
+     * With more than one thread, enemy movement and tower aiming are split across a fork-join pool (see World.setPool).
+     */
+    public static void main(String[] args) throws SlickException, IOException {
+        int[] enemyCounts = parseCounts(args.length > 0 ? args[0] : "100,1000");
+        int[] projectileCounts = parseCounts(args.length > 1 ? args[1] : "100,1000");
+        int[] towerCounts = parseCounts(args.length > 2 ? args[2] : "20");
+        String[] levelNames = (args.length > 3 ? args[3] : "fourbythree2").split(",");
+        int[] threadCounts = parseCounts(args.length > 4 ? args[4] : "1");
+
+        List<ForkJoinPool> pools = new ArrayList<>();
+        for (int threads : threadCounts) {
+            pools.add(threads > 1 ? new ForkJoinPool(threads) : null);
+        }
+
+        List<Scenario> scenarios = new ArrayList<>();
+        for (String levelName : levelNames) {
+            LevelMap level = new LevelMap("assets/levels/" + levelName + ".tmx");
+            for (int enemies : enemyCounts) {
+                for (int projectiles : projectileCounts) {
+                    for (int towers : towerCounts) {
+                        for (ForkJoinPool pool : pools) {
+                            scenarios.add(new Scenario(level, levelName, enemies, projectiles, towers, pool));
+                        }
+                    }
+                }
+            }
+        }
+
+        System.out.printf("%d warmup + %d measured iterations of %d ops%n", WARMUP, ITERATIONS, OPS);
+        System.out.printf("%-20s %5s %6s %5s %3s  %-14s %12s %10s %10s %10s%n", "benchmark", "enem", "proj", "tow", "thr", "level",
+                "ops/s", "us/op", "best us/op", "B/op");
+        for (Bench bench : benches()) {
+            for (Scenario scenario : scenarios) {
+                measure(bench, scenario);
+            }
+        }
+        System.out.println("(sink " + sink + ")");
+        for (ForkJoinPool pool : pools) {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+}
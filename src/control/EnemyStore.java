@@ -0,0 +1,310 @@
+package control;
+
+import java.util.Arrays;
+
+import org.newdawn.slick.Image;
+
+import game.Enemy;
+import game.Sprite;
+import game.SpriteRegistry;
+
+/**
+ * Every enemy in a world, kept as parallel arrays of primitives rather than an object each, so movement, collisions
+ * and targeting walk a few dense arrays instead of chasing a pointer per enemy.
+ * Enemies are addressed by slot (index into the arrays). Slots are kept in order of progress along the path,
+ * leader first, so an enemy's slot only holds for the tick it was read in; nothing keeps hold of an enemy across ticks.
+ * Removal is deferred as in EntityStore: removeLater marks a slot and compact closes every gap in one pass, keeping
+ * the order (swapping the last enemy in would change which enemy wins ties in targeting and collisions).
+ */
+public class EnemyStore {
+    private static final Enemy.Type[] TYPES = Enemy.Type.values();
+
+    /** Per type: image, scaled size (as Sprite keeps it) and half size rounded down (as Entity.checkCollision uses). */
+    private final Image[] images = new Image[TYPES.length];
+    private final float[] speeds = new float[TYPES.length];
+    private final float[] typeW = new float[TYPES.length], typeH = new float[TYPES.length];
+    private final int[] halfW = new int[TYPES.length], halfH = new int[TYPES.length];
+
+    private float[] x = new float[64], y = new float[64], vx = new float[64], vy = new float[64];
+    private float[] distanceRemaining = new float[64], distanceTravelled = new float[64];
+    private int[] health = new int[64];
+    /** Order each enemy spawned in, counting up from 0, so ties can still go to the oldest enemy. */
+    private int[] spawnOrder = new int[64];
+    private byte[] type = new byte[64];
+    /** Slots that removeLater has been called on. */
+    private boolean[] removed = new boolean[64];
+    /** Scratch for sortByProgress: slots in sorted order, their keys, and spare columns to gather each column into. */
+    private int[] order = new int[64];
+    private float[] keys = new float[64], spareFloats = new float[64];
+    private int[] spareInts = new int[64];
+    private byte[] spareBytes = new byte[64];
+    private int size = 0;
+    private int spawned = 0;
+    private boolean hasGaps = false;
+
+    /** @param sprites Where to get each type's image (and so its size) from */
+    EnemyStore(SpriteRegistry sprites) {
+        for (Enemy.Type t : TYPES) {
+            Image im = sprites.get(t);
+            images[t.ordinal()] = im;
+            speeds[t.ordinal()] = t.getSpeed();
+            typeW[t.ordinal()] = im.getWidth() * Sprite.SCALE;
+            typeH[t.ordinal()] = im.getHeight() * Sprite.SCALE;
+            halfW[t.ordinal()] = (int)typeW[t.ordinal()] / 2;
+            halfH[t.ordinal()] = (int)typeH[t.ordinal()] / 2;
+        }
+    }
+
+    /**
+     * Add an enemy at the back (it has no distance to Alistair until it first moves onto the map).
+     * @param startX x-position of start
+     * @param startY y-position of start
+     * @param dirX Initial x-direction (unscaled)
+     * @param dirY Initial y-direction (unscaled)
+     * @param t Enemy type
+     */
+    void add(float startX, float startY, float dirX, float dirY, Enemy.Type t) {
+        if (size == x.length) {
+            grow(size * 2);
+        }
+        int i = size++;
+        x[i] = startX;
+        y[i] = startY;
+        vx[i] = dirX * t.getSpeed();
+        vy[i] = dirY * t.getSpeed();
+        distanceRemaining[i] = Float.MAX_VALUE;
+        distanceTravelled[i] = 0;
+        health[i] = t.getHealth();
+        spawnOrder[i] = spawned++;
+        type[i] = (byte)t.ordinal();
+    }
+
+    /**
+     * Move a run of enemies one tick along the precalculated flow field.
+     * Only touches the given slots, so different runs can be advanced in parallel.
+     * @param from First slot to move
+     * @param to Slot just past the last one to move
+     * @param world World the enemies are in
+     */
+    void advance(int from, int to, World world) {
+        // Copy the columns into locals once, so the loop doesn't reload them after every store
+        float[] x = this.x, y = this.y, vx = this.vx, vy = this.vy;
+        float[] distanceRemaining = this.distanceRemaining, distanceTravelled = this.distanceTravelled;
+        byte[] type = this.type;
+        FlowField path = world.getPath();
+        for (int i = from; i < to; i++) {
+            float speed = speeds[type[i]];
+            float posX = x[i], posY = y[i], velX = vx[i], velY = vy[i];
+            int gridX = world.toGrid(posX), gridY = world.toGrid(posY);
+
+            if (world.inGridBounds(gridX, gridY)) {
+                int dirX = path.getDirX(gridX, gridY), dirY = path.getDirY(gridX, gridY);
+                int offX = (int)posX - (int)world.toPos(gridX), offY = (int)posY - (int)world.toPos(gridY);
+
+                // Turn when the path changes direction, at the center of the tile
+                // (small buffer in case of lag/fast sprites)
+                final int BUFFER = 5;
+                if ((dirX != 0 || dirY != 0) && (dirX != Math.signum(velX) || dirY != Math.signum(velY))
+                        && offX >= 0 && offX < BUFFER && offY >= 0 && offY < BUFFER) {
+                    velX = speed * dirX;
+                    velY = speed * dirY;
+                }
+                if (path.getDistance(gridX, gridY) != FlowField.UNREACHABLE) {
+                    // Whole tiles left, less how far past the center of this one we are
+                    distanceRemaining[i] = path.getDistance(gridX, gridY) * world.getTileSize()
+                            - (posX - world.toPos(gridX)) * dirX - (posY - world.toPos(gridY)) * dirY;
+                }
+            } else {
+                // Head away from the edge of the map
+                velX = speed * world.inwardDirX(gridX);
+                velY = speed * world.inwardDirY(gridY);
+            }
+
+            x[i] = posX + velX;
+            y[i] = posY + velY;
+            vx[i] = velX;
+            vy[i] = velY;
+            distanceTravelled[i] += speed;
+        }
+    }
+
+    /**
+     * Check if an enemy is touching a box, exactly as Entity.checkCollision would.
+     * @param i Slot of the enemy
+     * @param x2 Box centre x-position
+     * @param y2 Box centre y-position
+     * @param w2 Half the box's width, rounded down to whole pixels
+     * @param h2 Half the box's height, rounded down to whole pixels
+     */
+    boolean touches(int i, float x2, float y2, int w2, int h2) {
+        int w = halfW[type[i]], h = halfH[type[i]];
+        float x1 = x[i], y1 = y[i];
+        return (x1 + w >= x2 - w2) && (x2 + w2 >= x1 - w) && (y1 + h >= y2 - h2) && (y2 + h2 >= y1 - h);
+    }
+
+    /**
+     * Make an enemy take damage.
+     * @param i Slot of the enemy
+     * @param damage Amount to be deducted from health
+     */
+    void takeDamage(int i, int damage) {
+        health[i] -= damage;
+    }
+
+    /**
+     * Mark an enemy as removed, to be closed up by the next compact (its slot keeps its data until then).
+     * @param i Slot of the enemy
+     */
+    void removeLater(int i) {
+        removed[i] = true;
+        hasGaps = true;
+    }
+
+    /** Close every gap left by removeLater, keeping the remaining enemies in order. */
+    void compact() {
+        if (!hasGaps) {
+            return;
+        }
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (!removed[i]) {
+                if (kept != i) {
+                    move(i, kept);
+                }
+                kept++;
+            }
+        }
+        Arrays.fill(removed, 0, size, false);
+        size = kept;
+        hasGaps = false;
+    }
+
+    /**
+     * Stable sort by distance left to Alistair, leader first.
+     * Enemies rarely overtake each other, so this is usually one pass that finds them already in order. Otherwise
+     * an insertion sort runs over just the keys and slot numbers, then each column is gathered into the new order
+     * once, rather than shifting every column for every step of the insertion sort.
+     * Must not be called between removeLater and compact.
+     */
+    void sortByProgress() {
+        int first = 1;
+        while (first < size && Float.compare(distanceRemaining[first - 1], distanceRemaining[first]) <= 0) {
+            first++;
+        }
+        if (first >= size) {
+            return;
+        }
+
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        System.arraycopy(distanceRemaining, 0, keys, 0, size);
+        for (int i = first; i < size; i++) {
+            float key = keys[i];
+            if (Float.compare(keys[i - 1], key) <= 0) {
+                continue;
+            }
+            int slot = order[i];
+            int j = i - 1;
+            while (j >= 0 && Float.compare(keys[j], key) > 0) {
+                keys[j + 1] = keys[j];
+                order[j + 1] = order[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            order[j + 1] = slot;
+        }
+
+        // The keys are already the sorted distances, so swap them in rather than gathering
+        float[] sortedKeys = keys;
+        keys = distanceRemaining;
+        distanceRemaining = sortedKeys;
+        x = permute(x);
+        y = permute(y);
+        vx = permute(vx);
+        vy = permute(vy);
+        distanceTravelled = permute(distanceTravelled);
+        health = permute(health);
+        spawnOrder = permute(spawnOrder);
+        byte[] sortedTypes = spareBytes;
+        for (int i = 0; i < size; i++) {
+            sortedTypes[i] = type[order[i]];
+        }
+        spareBytes = type;
+        type = sortedTypes;
+    }
+
+    /** Gather a column into sorted order, returning it in a spare array and keeping the old one as the next spare. */
+    private float[] permute(float[] column) {
+        float[] sorted = spareFloats;
+        for (int i = 0; i < size; i++) {
+            sorted[i] = column[order[i]];
+        }
+        spareFloats = column;
+        return sorted;
+    }
+
+    private int[] permute(int[] column) {
+        int[] sorted = spareInts;
+        for (int i = 0; i < size; i++) {
+            sorted[i] = column[order[i]];
+        }
+        spareInts = column;
+        return sorted;
+    }
+
+    /** Copy an enemy from one slot to another, overwriting whatever was there. */
+    private void move(int from, int to) {
+        x[to] = x[from];
+        y[to] = y[from];
+        vx[to] = vx[from];
+        vy[to] = vy[from];
+        distanceRemaining[to] = distanceRemaining[from];
+        distanceTravelled[to] = distanceTravelled[from];
+        health[to] = health[from];
+        spawnOrder[to] = spawnOrder[from];
+        type[to] = type[from];
+    }
+
+    private void grow(int cap) {
+        x = Arrays.copyOf(x, cap);
+        y = Arrays.copyOf(y, cap);
+        vx = Arrays.copyOf(vx, cap);
+        vy = Arrays.copyOf(vy, cap);
+        distanceRemaining = Arrays.copyOf(distanceRemaining, cap);
+        distanceTravelled = Arrays.copyOf(distanceTravelled, cap);
+        health = Arrays.copyOf(health, cap);
+        spawnOrder = Arrays.copyOf(spawnOrder, cap);
+        type = Arrays.copyOf(type, cap);
+        removed = Arrays.copyOf(removed, cap);
+        order = new int[cap];
+        keys = new float[cap];
+        spareFloats = new float[cap];
+        spareInts = new int[cap];
+        spareBytes = new byte[cap];
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    public float getX(int i) { return x[i]; }
+    public float getY(int i) { return y[i]; }
+    public float getVX(int i) { return vx[i]; }
+    public float getVY(int i) { return vy[i]; }
+    public int getHealth(int i) { return health[i]; }
+    public boolean isDead(int i) { return health[i] <= 0; }
+    public Enemy.Type getType(int i) { return TYPES[type[i]]; }
+    /** Lower for enemies that spawned earlier. */
+    public int getSpawnOrder(int i) { return spawnOrder[i]; }
+    public float getSpeed(int i) { return speeds[type[i]]; }
+    public float getDistanceTravelled(int i) { return distanceTravelled[i]; }
+    /** Distance left along the path to Alistair (only known once the enemy is on the map). */
+    public float getDistanceRemaining(int i) { return distanceRemaining[i]; }
+    public Image getImage(int i) { return images[type[i]]; }
+    /** Scaled width, as drawn. */
+    public float getWidth(int i) { return typeW[type[i]]; }
+    public float getHeight(int i) { return typeH[type[i]]; }
+    /** Half the width rounded down to whole pixels, as used for collisions. */
+    public int getHalfWidth(int i) { return halfW[type[i]]; }
+    public int getHalfHeight(int i) { return halfH[type[i]]; }
+}
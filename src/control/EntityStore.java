@@ -0,0 +1,96 @@
+package control;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.RandomAccess;
+
+/**
+ * Dense array of entities, kept in the order they were added.
+ * Removal is deferred: removeLater empties a slot (so indices stay put for the rest of a loop)
+ * and compact closes all the gaps in one linear pass.
+ * Between removeLater and compact, get may return null.
+ */
+public class EntityStore<T> extends AbstractList<T> implements RandomAccess {
+    private Object[] items = new Object[64];
+    private int size = 0;
+    private boolean hasGaps = false;
+
+    @Override
+    public boolean add(T item) {
+        if (size == items.length) {
+            items = Arrays.copyOf(items, size * 2);
+        }
+        items[size++] = item;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int i) {
+        if (i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for size " + size);
+        }
+        return (T) items[i];
+    }
+
+    @Override
+    public int size() { return size; }
+
+    /**
+     * Empty a slot, to be closed up by the next compact.
+     * @param i Index of the item to remove
+     */
+    public void removeLater(int i) {
+        if (items[i] != null) {
+            items[i] = null;
+            hasGaps = true;
+        }
+    }
+
+    /** Close every gap left by removeLater, keeping the remaining items in order. */
+    public void compact() {
+        if (!hasGaps) {
+            return;
+        }
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (items[i] != null) {
+                items[kept++] = items[i];
+            }
+        }
+        Arrays.fill(items, kept, size, null);
+        size = kept;
+        hasGaps = false;
+        modCount++;
+    }
+
+    /**
+     * Stable insertion sort, which is close to a single pass when the items are already nearly in order.
+     * Must not be called between removeLater and compact.
+     * @param c Order to sort by
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void sort(Comparator<? super T> c) {
+        for (int i = 1; i < size; i++) {
+            Object item = items[i];
+            int j = i - 1;
+            while (j >= 0 && c.compare((T) items[j], (T) item) > 0) {
+                items[j + 1] = items[j];
+                j--;
+            }
+            items[j + 1] = item;
+        }
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(items, 0, size, null);
+        size = 0;
+        hasGaps = false;
+        modCount++;
+    }
+}
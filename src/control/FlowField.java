@@ -0,0 +1,211 @@
+package control;
+
+import java.util.Arrays;
+
+/**
+ * Direction and distance to a target tile from every tile on the map, found with a breadth-first search out from the target.
+ * Following the directions from any reachable tile takes a shortest path to the target, so maps can have branching paths.
+ * Cells are indexed x * height + y, like SpatialHash.
+ */
+public class FlowField {
+    /** Distance of tiles that can't reach the target. */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    /** Neighbours in the order ties are broken by (opposite directions are two apart). */
+    private static final int[] DX = {1, 0, -1, 0}, DY = {0, 1, 0, -1};
+    /** Step for each packed direction: 0 for none, otherwise one more than the neighbour's index in DX / DY. */
+    private static final int[] STEP_X = {0, 1, 0, -1, 0}, STEP_Y = {0, 0, 1, 0, -1};
+
+    private final int width, height, targetX, targetY;
+    private final boolean[] open;
+    /** Number of steps to the target. */
+    private final int[] dist;
+    /** Step to take from each tile, packed (see STEP_X; 0 at the target and on unreachable tiles). */
+    private final byte[] dir;
+    /** Breadth-first search queue, kept to avoid allocating on every update. */
+    private final int[] queue;
+    /** Tiles to search out from after blocking one, packed as distance << 32 | cell so they sort by distance. */
+    private final long[] seeds;
+
+    /**
+     * Build the field.
+     * @param width Map width in tiles
+     * @param height Map height in tiles
+     * @param open Whether enemies can walk on each tile (indexed x * height + y; copied)
+     * @param targetX Grid x-position of the target
+     * @param targetY Grid y-position of the target
+     */
+    FlowField(int width, int height, boolean[] open, int targetX, int targetY) {
+        this.width = width;
+        this.height = height;
+        this.targetX = targetX;
+        this.targetY = targetY;
+        this.open = Arrays.copyOf(open, width * height);
+        this.dist = new int[width * height];
+        this.dir = new byte[width * height];
+        this.queue = new int[width * height];
+        this.seeds = new long[width * height];
+        rebuild();
+    }
+
+    /**
+     * Open or block a tile and update the field.
+     * Opening a tile can only shorten paths, so only the tiles it brings closer are searched again.
+     * Blocking a tile can only lengthen the paths that went through it, so only those tiles are searched again
+     * (see block).
+     * @throws IllegalArgumentException If the tile is off the map
+     */
+    void setOpen(int x, int y, boolean isOpen) {
+        if (!inBounds(x, y)) {
+            throw new IllegalArgumentException("No tile at " + x + ", " + y + " on a " + width + "x" + height + " map");
+        }
+        int cell = x * height + y;
+        if (open[cell] == isOpen) {
+            return;
+        }
+        open[cell] = isOpen;
+        if (!isOpen) {
+            if (x == targetX && y == targetY) {
+                rebuild();
+            } else if (dist[cell] != UNREACHABLE) {
+                block(cell);
+            }
+            return;
+        }
+
+        // Link the tile to its closest reachable neighbour, then spread out from it
+        for (int d = 0; d < DX.length; d++) {
+            int nx = x + DX[d], ny = y + DY[d];
+            if (inBounds(nx, ny) && dist[nx * height + ny] != UNREACHABLE
+                    && (dist[cell] == UNREACHABLE || dist[nx * height + ny] + 1 < dist[cell])) {
+                dist[cell] = dist[nx * height + ny] + 1;
+                dir[cell] = (byte) (d + 1);
+            }
+        }
+        if (dist[cell] != UNREACHABLE) {
+            queue[0] = cell;
+            search(1);
+        }
+    }
+
+    /**
+     * Repair the field after blocking a tile that was on the way to the target.
+     * The tiles whose path ran through it (following the directions backwards from it) are cleared, then each is
+     * seeded from its nearest unaffected neighbour and they're searched again in order of distance. Every distance
+     * comes out as a rebuild would give it, but where there are several shortest paths the one picked may differ.
+     * @param blocked Cell that has just been blocked
+     */
+    private void block(int blocked) {
+        // Gather every tile whose step leads (eventually) onto the blocked one
+        queue[0] = blocked;
+        int count = 1;
+        for (int head = 0; head < count; head++) {
+            int cell = queue[head];
+            int x = cell / height, y = cell % height;
+            for (int d = 0; d < DX.length; d++) {
+                int nx = x + DX[d], ny = y + DY[d];
+                // The neighbour steps back onto this cell if its step is the opposite of d
+                if (inBounds(nx, ny) && dir[nx * height + ny] == (d + 2) % DX.length + 1) {
+                    queue[count++] = nx * height + ny;
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            dist[queue[i]] = UNREACHABLE;
+            dir[queue[i]] = 0;
+        }
+
+        // Link each of them to its closest neighbour that still has a path
+        int seedCount = 0;
+        for (int i = 1; i < count; i++) {
+            int cell = queue[i];
+            int x = cell / height, y = cell % height;
+            for (int d = 0; d < DX.length; d++) {
+                int nx = x + DX[d], ny = y + DY[d];
+                if (inBounds(nx, ny) && dist[nx * height + ny] != UNREACHABLE
+                        && (dist[cell] == UNREACHABLE || dist[nx * height + ny] + 1 < dist[cell])) {
+                    dist[cell] = dist[nx * height + ny] + 1;
+                    dir[cell] = (byte) (d + 1);
+                }
+            }
+            if (dist[cell] != UNREACHABLE) {
+                seeds[seedCount++] = (long) dist[cell] << 32 | cell;
+            }
+        }
+        Arrays.sort(seeds, 0, seedCount);
+
+        // Search out from the seeds, taking them in with the queue in order of distance so each tile is settled once
+        int head = 0, tail = 0, nextSeed = 0;
+        while (head < tail || nextSeed < seedCount) {
+            int cell;
+            if (nextSeed < seedCount && (head == tail || (int) (seeds[nextSeed] >>> 32) <= dist[queue[head]])) {
+                long seed = seeds[nextSeed++];
+                cell = (int) seed;
+                if ((int) (seed >>> 32) != dist[cell]) {
+                    // Already reached by a shorter path through another seed
+                    continue;
+                }
+            } else {
+                cell = queue[head++];
+            }
+            int x = cell / height, y = cell % height;
+            for (int d = 0; d < DX.length; d++) {
+                int nx = x + DX[d], ny = y + DY[d];
+                if (!inBounds(nx, ny)) {
+                    continue;
+                }
+                int next = nx * height + ny;
+                if (open[next] && dist[cell] + 1 < dist[next]) {
+                    dist[next] = dist[cell] + 1;
+                    dir[next] = (byte) ((d + 2) % DX.length + 1);
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    /** Recompute every tile from scratch. */
+    private void rebuild() {
+        Arrays.fill(dist, UNREACHABLE);
+        Arrays.fill(dir, (byte) 0);
+        int target = targetX * height + targetY;
+        dist[target] = 0;
+        queue[0] = target;
+        search(1);
+    }
+
+    /**
+     * Breadth-first search from the cells already in the queue, updating any neighbour this gives a shorter path.
+     * @param tail Number of cells in the queue
+     */
+    private void search(int tail) {
+        int head = 0;
+        while (head < tail) {
+            int cell = queue[head++];
+            int x = cell / height, y = cell % height;
+            for (int d = 0; d < DX.length; d++) {
+                int nx = x + DX[d], ny = y + DY[d];
+                if (!inBounds(nx, ny)) {
+                    continue;
+                }
+                int next = nx * height + ny;
+                if (open[next] && dist[cell] + 1 < dist[next]) {
+                    dist[next] = dist[cell] + 1;
+                    // Step back towards the cell we came from
+                    dir[next] = (byte) ((d + 2) % DX.length + 1);
+                    // Searching out from one cell, distances only drop once each, so every cell is queued at most once
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    /** Check grid coordinates against the map boundaries. */
+    boolean inBounds(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    /** Number of steps from a tile to the target, or UNREACHABLE. */
+    public int getDistance(int x, int y) { return dist[x * height + y]; }
+    public int getDirX(int x, int y) { return STEP_X[dir[x * height + y]]; }
+    public int getDirY(int x, int y) { return STEP_Y[dir[x * height + y]]; }
+}
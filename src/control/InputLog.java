@@ -0,0 +1,150 @@
+package control;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import game.Tower;
+
+/**
+ * Record of the player inputs that affect a game, and the tick each one happened on.
+ * Together with the seed, level and wave file this is enough for Replay to play the game back exactly.
+ */
+public class InputLog {
+    private static final int MAGIC = 0x41565457; // "AVTW"
+    private static final int VERSION = 1;
+
+    public enum Kind { PLACE_TOWER, NEXT_WAVE, DESELECT, END }
+
+    /** A single input. Tower placements carry the tower type and grid position; END carries World.checksum(). */
+    public static class Event {
+        public final long tick;
+        public final Kind kind;
+        public final Tower.Type tower;
+        public final int x, y;
+        public final long checksum;
+
+        private Event(long tick, Kind kind, Tower.Type tower, int x, int y, long checksum) {
+            this.tick = tick;
+            this.kind = kind;
+            this.tower = tower;
+            this.x = x;
+            this.y = y;
+            this.checksum = checksum;
+        }
+    }
+
+    private final long seed;
+    private final String levelPath, wavePath;
+    private final List<Event> events = new ArrayList<>();
+
+    /**
+     * Start a new log.
+     * @param seed Seed given to Util for the game
+     * @param levelPath Path to the level's .tmx file
+     * @param wavePath Path to the wave file
+     */
+    public InputLog(long seed, String levelPath, String wavePath) {
+        this.seed = seed;
+        this.levelPath = levelPath;
+        this.wavePath = wavePath;
+    }
+
+    /** Record an input without any arguments (a wave start or deselect). */
+    void record(long tick, Kind kind) {
+        events.add(new Event(tick, kind, null, 0, 0, 0));
+    }
+
+    /** Record a tower being placed at a grid position. */
+    void recordPlacement(long tick, Tower.Type tower, int x, int y) {
+        events.add(new Event(tick, Kind.PLACE_TOWER, tower, x, y, 0));
+    }
+
+    /** Record the end of the game, with the world's state for replays to check against. */
+    void recordEnd(long tick, long checksum) {
+        events.add(new Event(tick, Kind.END, null, 0, 0, checksum));
+    }
+
+    /**
+     * Write the log to a file.
+     * Ticks are stored as the (variable length) gap since the previous event, so long idle stretches cost a byte or two.
+     */
+    public void save(String path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(seed);
+            out.writeUTF(levelPath);
+            out.writeUTF(wavePath);
+            out.writeInt(events.size());
+            long lastTick = 0;
+            for (Event e : events) {
+                writeVarLong(out, e.tick - lastTick);
+                lastTick = e.tick;
+                out.writeByte(e.kind.ordinal());
+                if (e.kind == Kind.PLACE_TOWER) {
+                    out.writeByte(e.tower.ordinal());
+                    out.writeShort(e.x);
+                    out.writeShort(e.y);
+                } else if (e.kind == Kind.END) {
+                    out.writeLong(e.checksum);
+                }
+            }
+        }
+    }
+
+    /** Read a log written by save. */
+    public static InputLog load(String path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("Not a replay file (or from an incompatible version): " + path);
+            }
+            InputLog log = new InputLog(in.readLong(), in.readUTF(), in.readUTF());
+            int count = in.readInt();
+            long tick = 0;
+            for (int i = 0; i < count; i++) {
+                tick += readVarLong(in);
+                Kind kind = Kind.values()[in.readByte()];
+                if (kind == Kind.PLACE_TOWER) {
+                    log.recordPlacement(tick, Tower.Type.values()[in.readByte()], in.readShort(), in.readShort());
+                } else if (kind == Kind.END) {
+                    log.recordEnd(tick, in.readLong());
+                } else {
+                    log.record(tick, kind);
+                }
+            }
+            return log;
+        }
+    }
+
+    public long getSeed() { return seed; }
+    public String getLevelPath() { return levelPath; }
+    public String getWavePath() { return wavePath; }
+    public List<Event> getEvents() { return Collections.unmodifiableList(events); }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
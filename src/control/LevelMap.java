@@ -0,0 +1,163 @@
+package control;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.newdawn.slick.SlickException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * The logic side of a Tiled (.tmx) level: its size, map properties and the properties of the tile on each cell.
+ * Unlike Slick's TiledMap this never touches OpenGL, so levels can be simulated headless.
+ */
+public class LevelMap {
+    /** Tiled stores flip flags in the top bits of each tile id. */
+    private static final int GID_MASK = 0x1FFFFFFF;
+
+    private final int width, height, tileWidth, tileHeight;
+    private final Properties mapProperties = new Properties();
+    /** Tile properties by global tile id. */
+    private final Map<Integer, Properties> tileProperties = new HashMap<>();
+    /** Global tile id of each cell on the first layer, row by row. */
+    private final int[] gids;
+
+    /**
+     * Load a level.
+     * @param path Path to the .tmx file
+     * @throws SlickException If the file can't be read or isn't a valid map
+     */
+    public LevelMap(String path) throws SlickException {
+        File file = new File(path);
+        try {
+            Element map = parse(file);
+            width = Integer.parseInt(map.getAttribute("width"));
+            height = Integer.parseInt(map.getAttribute("height"));
+            tileWidth = Integer.parseInt(map.getAttribute("tilewidth"));
+            tileHeight = Integer.parseInt(map.getAttribute("tileheight"));
+            readProperties(map, mapProperties);
+
+            // Tile sets, either inline or in their own .tsx file
+            NodeList tileSets = map.getElementsByTagName("tileset");
+            for (int i = 0; i < tileSets.getLength(); i++) {
+                Element tileSet = (Element) tileSets.item(i);
+                int firstGid = Integer.parseInt(tileSet.getAttribute("firstgid"));
+                if (!tileSet.getAttribute("source").isEmpty()) {
+                    tileSet = parse(new File(file.getParentFile(), tileSet.getAttribute("source")));
+                }
+                NodeList tiles = tileSet.getElementsByTagName("tile");
+                for (int j = 0; j < tiles.getLength(); j++) {
+                    Element tile = (Element) tiles.item(j);
+                    Properties props = new Properties();
+                    readProperties(tile, props);
+                    tileProperties.put(firstGid + Integer.parseInt(tile.getAttribute("id")), props);
+                }
+            }
+
+            // Only the first layer matters to the game
+            Element data = (Element) ((Element) map.getElementsByTagName("layer").item(0))
+                    .getElementsByTagName("data").item(0);
+            gids = readLayer(data, width * height);
+        } catch (IOException | RuntimeException e) {
+            throw new SlickException("Unable to load level: " + path, e);
+        }
+    }
+
+    /**
+     * Get a map-wide property.
+     * @param name Property name
+     * @param def Value to use if it isn't set
+     */
+    public String getMapProperty(String name, String def) {
+        return mapProperties.getProperty(name, def);
+    }
+
+    /**
+     * Get the properties of the tile on a cell.
+     * @return The properties, or null if the tile has none
+     */
+    public Properties getTileProperties(int x, int y) {
+        return tileProperties.get(gids[y * width + x]);
+    }
+
+    /**
+     * Change the tile on a cell of the first layer (the only one the game reads).
+     * @param gid Global id of the new tile
+     */
+    void setTileId(int x, int y, int gid) {
+        gids[y * width + x] = gid & GID_MASK;
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getTileWidth() { return tileWidth; }
+    public int getTileHeight() { return tileHeight; }
+
+    private static Element parse(File file) throws IOException {
+        try {
+            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+            return doc.getDocumentElement();
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Invalid XML in " + file, e);
+        }
+    }
+
+    /** Copy the direct <properties> child of an element. */
+    private static void readProperties(Element element, Properties into) {
+        NodeList children = element.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            if (children.item(i) instanceof Element && ((Element) children.item(i)).getTagName().equals("properties")) {
+                NodeList props = ((Element) children.item(i)).getElementsByTagName("property");
+                for (int j = 0; j < props.getLength(); j++) {
+                    Element prop = (Element) props.item(j);
+                    into.setProperty(prop.getAttribute("name"), prop.getAttribute("value"));
+                }
+            }
+        }
+    }
+
+    /** Decode a layer's tile ids (CSV, or base64 with optional gzip/zlib compression). */
+    private static int[] readLayer(Element data, int count) throws IOException {
+        int[] gids = new int[count];
+        String text = data.getTextContent().trim();
+        if (data.getAttribute("encoding").equals("csv")) {
+            String[] values = text.split("\\s*,\\s*");
+            for (int i = 0; i < count; i++) {
+                gids[i] = (int) (Long.parseLong(values[i]) & GID_MASK);
+            }
+            return gids;
+        }
+        if (!data.getAttribute("encoding").equals("base64")) {
+            throw new IOException("Unsupported layer encoding '" + data.getAttribute("encoding") + "'");
+        }
+
+        byte[] bytes = Base64.getMimeDecoder().decode(text);
+        String compression = data.getAttribute("compression");
+        if (!compression.isEmpty()) {
+            InputStream raw = new ByteArrayInputStream(bytes);
+            try (InputStream in = compression.equals("gzip") ? new GZIPInputStream(raw) : new InflaterInputStream(raw)) {
+                bytes = in.readAllBytes();
+            }
+        }
+        ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < count; i++) {
+            gids[i] = buf.getInt() & GID_MASK;
+        }
+        return gids;
+    }
+}
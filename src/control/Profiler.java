@@ -0,0 +1,145 @@
+package control;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import org.newdawn.slick.Color;
+import org.newdawn.slick.Graphics;
+
+import ui.Fonts;
+
+/**
+ * Times each phase of a frame and keeps the last few seconds of frames in a ring buffer.
+ * Recording only writes into preallocated arrays, so it stays on all the time; the overlay and CSV export are only built on request.
+ * Ticks are recorded from the simulation thread and frames from the game thread, so every method locks the profiler.
+ */
+public class Profiler {
+    /** Parts of a frame. A phase that runs more than once in a frame (e.g. several ticks) is summed. */
+    public enum Phase {
+        /** Enemy spawning and tower targeting/shooting (World.tick). */
+        TICK,
+        /** Enemy movement and hitting Alistair. */
+        ENEMIES,
+        /** Projectile movement and collisions. */
+        PROJECTILES,
+        /** Tower placement and button handling. */
+        INPUT,
+        /** Uploading and starting sounds. */
+        AUDIO,
+        /** Issuing draw calls (the GPU may finish them later). */
+        RENDER
+    }
+    private static final Phase[] PHASES = Phase.values();
+    /** Number of frames kept. */
+    private static final int FRAMES = 512;
+    /** Frames between refreshes of the overlay text. */
+    private static final int OVERLAY_REFRESH = 30;
+    private static final Color OVERLAY_BACKGROUND = new Color(0, 0, 0, 0.6f);
+
+    /** Nanoseconds per phase, FRAMES rows of PHASES.length. */
+    private final long[] nanos = new long[FRAMES * PHASES.length];
+    private final int[] enemies = new int[FRAMES], projectiles = new int[FRAMES], towers = new int[FRAMES];
+    /** Slot being recorded, and the number of complete frames stored (up to FRAMES). */
+    private int frame = 0, frames = 0;
+    private long totalFrames = 0;
+    /** Used to sort a phase's timings without allocating. */
+    private final long[] scratch = new long[FRAMES];
+    private String[] overlay = new String[0];
+
+    /**
+     * Add the time since a mark to a phase of the current frame.
+     * @param phase Phase that just finished
+     * @param since System.nanoTime() when the phase started
+     * @return The current time, to use as the start of the next phase
+     */
+    public synchronized long record(Phase phase, long since) {
+        long now = System.nanoTime();
+        nanos[frame * PHASES.length + phase.ordinal()] += now - since;
+        return now;
+    }
+
+    /**
+     * Finish the current frame and start the next.
+     * @param snapshot Snapshot drawn this frame, to count entities in (null if no game is running)
+     */
+    public synchronized void endFrame(Snapshot snapshot) {
+        if (snapshot != null) {
+            enemies[frame] = snapshot.count(Snapshot.Layer.ENEMIES);
+            projectiles[frame] = snapshot.count(Snapshot.Layer.PROJECTILES);
+            towers[frame] = snapshot.count(Snapshot.Layer.TOWERS);
+        }
+        frame = (frame + 1) % FRAMES;
+        frames = Math.min(frames + 1, FRAMES);
+        totalFrames++;
+        Arrays.fill(nanos, frame * PHASES.length, (frame + 1) * PHASES.length, 0);
+        enemies[frame] = projectiles[frame] = towers[frame] = 0;
+    }
+
+    /**
+     * Get a percentile of a phase's time over the stored frames.
+     * @param phase Phase to look at
+     * @param p Percentile, from 0 to 100
+     * @return Time in nanoseconds
+     */
+    public synchronized long percentile(Phase phase, double p) {
+        if (frames == 0) {
+            return 0;
+        }
+        for (int i = 0; i < frames; i++) {
+            scratch[i] = nanos[slot(i) * PHASES.length + phase.ordinal()];
+        }
+        Arrays.sort(scratch, 0, frames);
+        return scratch[Math.min(frames - 1, (int) (p / 100 * frames))];
+    }
+
+    /** Draw each phase's median and 99th percentile time, plus the entity counts of the last frame. */
+    public synchronized void render(Graphics g, float x, float y) {
+        if (overlay.length == 0 || totalFrames % OVERLAY_REFRESH == 0) {
+            overlay = new String[PHASES.length + 2];
+            overlay[0] = String.format("%-12s %7s %7s", "phase (ms)", "p50", "p99");
+            for (Phase phase : PHASES) {
+                overlay[phase.ordinal() + 1] = String.format("%-12s %7.2f %7.2f", phase.toString().toLowerCase(),
+                        percentile(phase, 50) / 1e6, percentile(phase, 99) / 1e6);
+            }
+            int last = slot(frames - 1);
+            overlay[PHASES.length + 1] = String.format("%d enemies, %d projectiles, %d towers",
+                    enemies[last], projectiles[last], towers[last]);
+        }
+
+        g.setColor(OVERLAY_BACKGROUND);
+        g.fillRect(x, y, 320, overlay.length * Fonts.TINY_TTF.getLineHeight() + 10);
+        g.setColor(Color.white);
+        g.setFont(Fonts.TINY_TTF);
+        for (int i = 0; i < overlay.length; i++) {
+            g.drawString(overlay[i], x + 5, y + 5 + i * Fonts.TINY_TTF.getLineHeight());
+        }
+    }
+
+    /**
+     * Write the stored frames to a CSV file, oldest first, with one column per phase (in nanoseconds) and the entity counts.
+     * @param path File to write to
+     */
+    public synchronized void saveCsv(String path) throws IOException {
+        try (PrintWriter out = new PrintWriter(path)) {
+            out.print("frame");
+            for (Phase phase : PHASES) {
+                out.print("," + phase.toString().toLowerCase() + "_ns");
+            }
+            out.println(",enemies,projectiles,towers");
+            for (int i = 0; i < frames; i++) {
+                int s = slot(i);
+                out.print(totalFrames - frames + i);
+                for (int p = 0; p < PHASES.length; p++) {
+                    out.print("," + nanos[s * PHASES.length + p]);
+                }
+                out.println("," + enemies[s] + "," + projectiles[s] + "," + towers[s]);
+            }
+        }
+    }
+
+    /** Ring buffer slot of the i-th oldest stored frame. */
+    private int slot(int i) {
+        return Math.floorMod(frame - frames + i, FRAMES);
+    }
+}
@@ -0,0 +1,172 @@
+package control;
+
+import java.util.Arrays;
+
+import org.newdawn.slick.Image;
+
+import game.Projectile;
+import game.Sprite;
+import game.SpriteRegistry;
+
+/**
+ * Every projectile in a world, kept as parallel arrays of primitives like EnemyStore, so firing a shot doesn't
+ * allocate and moving them all is one pass over a few dense arrays.
+ * Projectiles are addressed by slot, in the order they were fired (which decides who gets an enemy both hit).
+ * Removal is deferred as in EntityStore: removeLater marks a slot and compact closes every gap in one pass.
+ */
+public class ProjectileStore {
+    private static final Projectile.Kind[] KINDS = Projectile.Kind.values();
+
+    /** Per kind: image and its unscaled size. */
+    private final Image[] images = new Image[KINDS.length];
+    private final int[] imageW = new int[KINDS.length], imageH = new int[KINDS.length];
+
+    private float[] x = new float[64], y = new float[64], vx = new float[64], vy = new float[64];
+    /** Scaled size, worked out the same way Entity.setScale does so collisions match it exactly. */
+    private float[] w = new float[64], h = new float[64], scale = new float[64];
+    private byte[] kind = new byte[64];
+    /** Slots that removeLater has been called on. */
+    private boolean[] removed = new boolean[64];
+    private int size = 0;
+    private boolean hasGaps = false;
+
+    /** @param sprites Where to get each kind's image (and so its size) from */
+    ProjectileStore(SpriteRegistry sprites) {
+        for (Projectile.Kind k : KINDS) {
+            Image im = sprites.get(k);
+            images[k.ordinal()] = im;
+            imageW[k.ordinal()] = im.getWidth();
+            imageH[k.ordinal()] = im.getHeight();
+        }
+    }
+
+    /**
+     * Fire a projectile.
+     * @param k Kind of projectile
+     * @param startX Starting x-position
+     * @param startY Starting y-position
+     * @param velX x-velocity
+     * @param velY y-velocity
+     */
+    void add(Projectile.Kind k, float startX, float startY, float velX, float velY) {
+        if (size == x.length) {
+            grow(size * 2);
+        }
+        int i = size++;
+        x[i] = startX;
+        y[i] = startY;
+        vx[i] = velX;
+        vy[i] = velY;
+        w[i] = imageW[k.ordinal()];
+        h[i] = imageH[k.ordinal()];
+        scale[i] = 1;
+        kind[i] = (byte)k.ordinal();
+        // Every sprite starts at the default scale, then some kinds shrink
+        rescale(i, Sprite.SCALE);
+        if (k.getScale() != Sprite.SCALE) {
+            rescale(i, k.getScale());
+        }
+    }
+
+    /**
+     * Move a run of projectiles one tick, growing the kinds that grow.
+     * @param from First slot to move
+     * @param to Slot just past the last one to move
+     */
+    void advance(int from, int to) {
+        for (int i = from; i < to; i++) {
+            x[i] += vx[i];
+            y[i] += vy[i];
+            float growth = KINDS[kind[i]].getGrowth();
+            if (growth != 0) {
+                rescale(i, scale[i] + growth);
+            }
+        }
+    }
+
+    /**
+     * Check whether a projectile should disappear: once it's off the screen, or has grown to its full size.
+     * @param i Slot of the projectile
+     * @param windowW Game width
+     * @param windowH Game height
+     */
+    boolean isDead(int i, int windowW, int windowH) {
+        float maxScale = KINDS[kind[i]].getMaxScale();
+        return x[i] - w[i] / 2 >= windowW || x[i] + w[i] / 2 < 0 || y[i] - h[i] / 2 >= windowH || y[i] + h[i] / 2 < 0
+                || (maxScale > 0 && scale[i] >= maxScale);
+    }
+
+    /**
+     * Mark a projectile as removed, to be closed up by the next compact (its slot keeps its data until then).
+     * @param i Slot of the projectile
+     */
+    void removeLater(int i) {
+        removed[i] = true;
+        hasGaps = true;
+    }
+
+    /** Close every gap left by removeLater, keeping the remaining projectiles in order. */
+    void compact() {
+        if (!hasGaps) {
+            return;
+        }
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (!removed[i]) {
+                if (kept != i) {
+                    x[kept] = x[i];
+                    y[kept] = y[i];
+                    vx[kept] = vx[i];
+                    vy[kept] = vy[i];
+                    w[kept] = w[i];
+                    h[kept] = h[i];
+                    scale[kept] = scale[i];
+                    kind[kept] = kind[i];
+                }
+                kept++;
+            }
+        }
+        Arrays.fill(removed, 0, size, false);
+        size = kept;
+        hasGaps = false;
+    }
+
+    /** Same arithmetic as Entity.setScale: back to the unscaled size, then out to the new scale. */
+    private void rescale(int i, float newScale) {
+        w[i] = w[i] / scale[i];
+        h[i] = h[i] / scale[i];
+        scale[i] = newScale;
+        w[i] = w[i] * newScale;
+        h[i] = h[i] * newScale;
+    }
+
+    private void grow(int cap) {
+        x = Arrays.copyOf(x, cap);
+        y = Arrays.copyOf(y, cap);
+        vx = Arrays.copyOf(vx, cap);
+        vy = Arrays.copyOf(vy, cap);
+        w = Arrays.copyOf(w, cap);
+        h = Arrays.copyOf(h, cap);
+        scale = Arrays.copyOf(scale, cap);
+        kind = Arrays.copyOf(kind, cap);
+        removed = Arrays.copyOf(removed, cap);
+    }
+
+    public int size() { return size; }
+
+    public float getX(int i) { return x[i]; }
+    public float getY(int i) { return y[i]; }
+    public float getVX(int i) { return vx[i]; }
+    public float getVY(int i) { return vy[i]; }
+    public Projectile.Kind getKind(int i) { return KINDS[kind[i]]; }
+    public int getDamage(int i) { return KINDS[kind[i]].getDamage(); }
+    public Image getImage(int i) { return images[kind[i]]; }
+    public float getLeft(int i) { return x[i] - w[i] / 2; }
+    public float getTop(int i) { return y[i] - h[i] / 2; }
+    /** Width as drawn (the image scaled). */
+    public float getWidth(int i) { return imageW[kind[i]] * scale[i]; }
+    public float getHeight(int i) { return imageH[kind[i]] * scale[i]; }
+    /** Half the width rounded down to whole pixels, as used for collisions. */
+    public int getHalfWidth(int i) { return (int)w[i] / 2; }
+    public int getHalfHeight(int i) { return (int)h[i] / 2; }
+}
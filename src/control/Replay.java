@@ -0,0 +1,63 @@
+package control;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.newdawn.slick.SlickException;
+
+/**
+ * Plays back a recorded game headless, as fast as the CPU allows.
+ * The replay uses the same seed and fixed 20 ms ticks as the recording, so it ends in exactly the same state.
+ */
+public final class Replay {
+    private Replay() {} // prevents instantiation from outside the class
+
+    /**
+     * Replay a log up to its END event (or its last input if the game was never ended).
+     * @param log The recorded game
+     * @return The world in its final state
+     */
+    public static World run(InputLog log) throws SlickException, IOException {
+        Util.setSeed(log.getSeed());
+        World world = new World(new LevelMap(log.getLevelPath()), Wave.load(log.getWavePath()));
+
+        List<InputLog.Event> events = log.getEvents();
+        int next = 0;
+        while (next < events.size()) {
+            // Inputs come after the tick they were recorded on (see App.update)
+            while (next < events.size() && events.get(next).tick == world.getTicks()) {
+                InputLog.Event e = events.get(next++);
+                if (e.kind == InputLog.Kind.END) {
+                    return world;
+                }
+                world.apply(e);
+            }
+            if (next < events.size()) {
+                world.step(Simulation.TICK_MS);
+            }
+        }
+        return world;
+    }
+
+    /**
+     * Replay a recorded game and check it matches the recording.
+     * Usage: Replay [replay file]
+     */
+    public static void main(String[] args) throws SlickException, IOException {
+        InputLog log = InputLog.load(args[0]);
+        long start = System.nanoTime();
+        World world = run(log);
+        double ms = (System.nanoTime() - start) / 1e6;
+
+        System.out.printf("Replayed %d ticks in %.1f ms: wave %d, health %d, money %d, leaks %d%n",
+                world.getTicks(), ms, world.getWaveNum(), world.getHealth(), world.getMoney(), world.getLeaks());
+        List<InputLog.Event> events = log.getEvents();
+        if (!events.isEmpty() && events.get(events.size() - 1).kind == InputLog.Kind.END) {
+            boolean match = events.get(events.size() - 1).checksum == world.checksum();
+            System.out.println(match ? "Final state matches the recording" : "MISMATCH: final state differs from the recording");
+            if (!match) {
+                System.exit(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package control;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.newdawn.slick.SlickException;
+
+/**
+ * Runs a level headless (no window, sound or OpenGL) as fast as the CPU allows.
+ * Ticks are the same fixed 20 ms steps the game uses, so results match a real game.
+ */
+public class Simulation {
+    /** Length of a game tick in ms (the game runs them on a SimulationThread). */
+    public static final int TICK_MS = 20;
+
+    private final World world;
+    private long ticks = 0;
+
+    /**
+     * Load a level to simulate.
+     * @param levelPath Path to the level's .tmx file
+     * @param wavePath Path to the wave file
+     */
+    public Simulation(String levelPath, String wavePath) throws SlickException, IOException {
+        this(new LevelMap(levelPath), Wave.load(wavePath));
+    }
+
+    /**
+     * Simulate an already loaded level. The level can be shared between simulations but the waves can't.
+     * @param level The level's tile data
+     * @param waves Waves to play
+     */
+    public Simulation(LevelMap level, List<Wave> waves) throws SlickException {
+        world = new World(level, waves);
+    }
+
+    /**
+     * Start the next wave and run it until every enemy is gone or the game is over.
+     * @return False if there were no waves left to play
+     */
+    public boolean playWave() throws SlickException {
+        if (!world.hasNextWave() || !world.startNextWave()) {
+            return false;
+        }
+        do {
+            world.step(TICK_MS);
+            ticks++;
+        } while (!world.isWaveComplete() && !world.isGameOver());
+        return true;
+    }
+
+    public World getWorld() { return world; }
+    public long getTicks() { return ticks; }
+
+    /**
+     * Play a level through with no towers and report how far it got.
+     * Usage: Simulation [level name] [wave file] [threads]
+     * With more than one thread, enemy movement and tower aiming are split across a fork-join pool (see World.setPool).
+     */
+    public static void main(String[] args) throws SlickException, IOException {
+        String levelName = args.length > 0 ? args[0] : "fourbythree2";
+        String wavePath = args.length > 1 ? args[1] : "assets/waves/game1.txt";
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        long start = System.nanoTime();
+        Simulation sim = new Simulation("assets/levels/" + levelName + ".tmx", wavePath);
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        sim.getWorld().setPool(pool);
+        while (!sim.getWorld().isGameOver() && sim.playWave()) {
+            System.out.printf("Wave %d: health %d, money %d%n",
+                    sim.getWorld().getWaveNum(), sim.getWorld().getHealth(), sim.getWorld().getMoney());
+        }
+        double ms = (System.nanoTime() - start) / 1e6;
+        System.out.printf("Simulated %d ticks in %.1f ms (%.0f ticks/s)%n", sim.getTicks(), ms, sim.getTicks() / ms * 1000);
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
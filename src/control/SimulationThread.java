@@ -0,0 +1,161 @@
+package control;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.newdawn.slick.SlickException;
+
+/**
+ * Runs a World's game logic on its own thread in fixed ticks (Simulation.TICK_MS), so a slow tick never holds up a frame.
+ * The game can be fast-forwarded by a time scale: every tick interval then runs that many ticks back to back,
+ * and only the state after the last one is published. Ticks stay the same length, so a game plays out the same
+ * at any speed (and replays still match).
+ * After each tick (or batch of ticks) the state to draw is copied into a Snapshot. There are three of them: one being filled, the newest
+ * complete one, and one being drawn. They're swapped under a lock held for a few instructions, so neither thread
+ * ever waits for the other to finish filling or drawing.
+ * Anything else that reads or changes the world (i.e. player input) must hold getLock().
+ */
+public class SimulationThread extends Thread {
+    /** Most ticks to run back to back after a stall (e.g. a debugger pause) before giving up on catching up. */
+    private static final int MAX_BEHIND = 5;
+    /** Fastest time scale allowed. */
+    public static final int MAX_TIME_SCALE = 32;
+    private static final long TICK_NANOS = Simulation.TICK_MS * 1_000_000L;
+
+    private final World world;
+    private final Profiler profiler;
+    /** Fair, so a thread waiting on it gets in before the next batch of ticks. */
+    private final ReentrantLock lock = new ReentrantLock(true);
+    /** back is only touched while holding lock, front only by the drawing thread; swaps synchronize on this. */
+    private Snapshot back = new Snapshot(), ready = new Snapshot(), front = new Snapshot();
+    /** Whether ready is newer than front. */
+    private boolean fresh = false;
+    /** System.nanoTime() of the last tick. */
+    private long lastTick;
+    private volatile boolean running = true;
+    /** Whatever stopped the simulation early, or null if it hasn't failed. */
+    private volatile Throwable failure = null;
+    /** Ticks to run per tick interval. */
+    private volatile int timeScale = 1;
+
+    /**
+     * Prepare to simulate a world. Call start() to begin ticking.
+     * @param world World to simulate; owned by this thread from now on, apart from input made under getLock()
+     * @param profiler Profiler to record each tick's phases in
+     */
+    public SimulationThread(World world, Profiler profiler) {
+        super("Simulation");
+        setDaemon(true);
+        this.world = world;
+        this.profiler = profiler;
+        lastTick = System.nanoTime();
+        world.publish(front, lastTick);
+    }
+
+    @Override
+    public void run() {
+        long next = System.nanoTime();
+        try {
+            while (running) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                    continue;
+                }
+                next = Math.max(next + TICK_NANOS, System.nanoTime() - MAX_BEHIND * TICK_NANOS);
+                step(timeScale);
+            }
+        } catch (InterruptedException e) {
+            // Stopped while waiting for the next tick
+        } catch (Throwable e) {
+            // Left for the game thread to pick up (see rethrowFailure), so the game doesn't carry on frozen
+            System.err.println("Simulation stopped: " + e);
+            failure = e;
+        }
+    }
+
+    /** Run a batch of ticks and publish the result of the last one. */
+    private void step(int ticks) throws SlickException {
+        lock.lock();
+        try {
+            for (int i = 0; i < ticks; i++) {
+                long t = System.nanoTime();
+                lastTick = t;
+                world.tick(Simulation.TICK_MS);
+                t = profiler.record(Profiler.Phase.TICK, t);
+                world.processEnemies();
+                t = profiler.record(Profiler.Phase.ENEMIES, t);
+                world.processProjectiles();
+                profiler.record(Profiler.Phase.PROJECTILES, t);
+            }
+            publish();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copy the world into a snapshot and make it the newest one, e.g. after input has changed the world between ticks.
+     * Must be called while holding getLock().
+     */
+    public void publish() {
+        world.publish(back, lastTick);
+        synchronized (this) {
+            Snapshot s = ready;
+            ready = back;
+            back = s;
+            fresh = true;
+        }
+    }
+
+    /**
+     * Get the newest snapshot, for drawing. It won't change until the next call.
+     * Call from one thread only.
+     */
+    public synchronized Snapshot latest() {
+        if (fresh) {
+            Snapshot s = front;
+            front = ready;
+            ready = s;
+            fresh = false;
+        }
+        return front;
+    }
+
+    /** Stop ticking and wait for the current tick (if any) to finish. Afterwards the world can be used directly again. */
+    public void finish() {
+        running = false;
+        interrupt();
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Throw whatever stopped the simulation, if it failed, so the failure surfaces on the calling thread.
+     * Call regularly from the game thread.
+     */
+    public void rethrowFailure() throws SlickException {
+        Throwable e = failure;
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        if (e != null) {
+            throw new SlickException("Simulation stopped: " + e, e);
+        }
+    }
+
+    /** Lock to hold while touching the world from another thread. Ticks only run while it's free. */
+    public ReentrantLock getLock() { return lock; }
+    /** Number of ticks run per tick interval (1 is normal speed). */
+    public int getTimeScale() { return timeScale; }
+
+    /** Set the number of ticks to run per tick interval, from 1 (normal speed) to MAX_TIME_SCALE. */
+    public void setTimeScale(int timeScale) {
+        if (timeScale < 1 || timeScale > MAX_TIME_SCALE) {
+            throw new IllegalArgumentException("Time scale must be from 1 to " + MAX_TIME_SCALE);
+        }
+        this.timeScale = timeScale;
+    }
+}
@@ -0,0 +1,122 @@
+package control;
+
+import java.util.Arrays;
+
+import org.newdawn.slick.Image;
+
+import game.Sprite;
+
+/**
+ * Everything the renderer needs from a World that the simulation changes, copied at the end of a tick.
+ * Snapshots are filled on the simulation thread and drawn on the game thread, so drawing never reads live entities
+ * (see SimulationThread). Each sprite also keeps its velocity, so it can be drawn anywhere between its position
+ * on the previous tick and this one.
+ */
+public class Snapshot {
+    /** Groups of sprites, in drawing order. */
+    public enum Layer { ENEMIES, TOWERS, PROJECTILES }
+    private static final Layer[] LAYERS = Layer.values();
+
+    private Image[] images = new Image[64];
+    /** Where each sprite is drawn (its top left corner and scaled size), and how far it moved this tick. */
+    private float[] left = new float[64], top = new float[64], width = new float[64], height = new float[64],
+            vx = new float[64], vy = new float[64];
+    private int size = 0;
+    /** Index just past the last sprite of each layer. */
+    private final int[] layerEnd = new int[LAYERS.length];
+    private long ticks, time;
+    private int waveNum, money, health;
+    private boolean gameOver;
+
+    /** Remove every sprite, ready to be filled again. */
+    void clear() {
+        size = 0;
+        Arrays.fill(layerEnd, 0);
+    }
+
+    /** Add a sprite that doesn't move. */
+    void add(Sprite sprite) {
+        add(sprite, 0, 0);
+    }
+
+    /** Add an enemy along with its velocity. */
+    void add(EnemyStore enemies, int i) {
+        float w = enemies.getWidth(i), h = enemies.getHeight(i);
+        add(enemies.getImage(i), enemies.getX(i) - w / 2, enemies.getY(i) - h / 2, w, h,
+                enemies.getVX(i), enemies.getVY(i));
+    }
+
+    /** Add a projectile along with its velocity. */
+    void add(ProjectileStore projectiles, int i) {
+        add(projectiles.getImage(i), projectiles.getLeft(i), projectiles.getTop(i), projectiles.getWidth(i),
+                projectiles.getHeight(i), projectiles.getVX(i), projectiles.getVY(i));
+    }
+
+    private void add(Sprite sprite, float spriteVX, float spriteVY) {
+        Image im = sprite.getImage();
+        add(im, sprite.getLeft(), sprite.getTop(), im.getWidth() * sprite.getScale(), im.getHeight() * sprite.getScale(),
+                spriteVX, spriteVY);
+    }
+
+    private void add(Image im, float spriteLeft, float spriteTop, float spriteW, float spriteH,
+            float spriteVX, float spriteVY) {
+        if (size == images.length) {
+            int cap = size * 2;
+            images = Arrays.copyOf(images, cap);
+            left = Arrays.copyOf(left, cap);
+            top = Arrays.copyOf(top, cap);
+            width = Arrays.copyOf(width, cap);
+            height = Arrays.copyOf(height, cap);
+            vx = Arrays.copyOf(vx, cap);
+            vy = Arrays.copyOf(vy, cap);
+        }
+        images[size] = im;
+        left[size] = spriteLeft;
+        top[size] = spriteTop;
+        width[size] = spriteW;
+        height[size] = spriteH;
+        vx[size] = spriteVX;
+        vy[size] = spriteVY;
+        size++;
+    }
+
+    /** Finish a layer. Sprites added since the previous layer was finished belong to it. */
+    void endLayer(Layer layer) {
+        layerEnd[layer.ordinal()] = size;
+    }
+
+    /**
+     * Record the world's status.
+     * @param time System.nanoTime() of the tick the snapshot shows
+     */
+    void setStatus(long ticks, long time, int waveNum, int money, int health, boolean gameOver) {
+        this.ticks = ticks;
+        this.time = time;
+        this.waveNum = waveNum;
+        this.money = money;
+        this.health = health;
+        this.gameOver = gameOver;
+    }
+
+    /** Index of the first sprite in a layer. */
+    public int getStart(Layer layer) { return layer.ordinal() == 0 ? 0 : layerEnd[layer.ordinal() - 1]; }
+    /** Index just past the last sprite in a layer. */
+    public int getEnd(Layer layer) { return layerEnd[layer.ordinal()]; }
+    /** Number of sprites in a layer. */
+    public int count(Layer layer) { return getEnd(layer) - getStart(layer); }
+
+    public Image getImage(int i) { return images[i]; }
+    public float getLeft(int i) { return left[i]; }
+    public float getTop(int i) { return top[i]; }
+    public float getWidth(int i) { return width[i]; }
+    public float getHeight(int i) { return height[i]; }
+    public float getVX(int i) { return vx[i]; }
+    public float getVY(int i) { return vy[i]; }
+
+    public long getTicks() { return ticks; }
+    public long getTime() { return time; }
+    public int getWaveNum() { return waveNum; }
+    public int getMoney() { return money; }
+    public int getHealth() { return health; }
+    public boolean isGameOver() { return gameOver; }
+}
@@ -0,0 +1,230 @@
+package control;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the tile map, used to narrow down collision checks and tower queries to nearby enemies.
+ * Enemies are bucketed by the tile their centre is on (positions off the map are clamped to the edge).
+ * Rebuilt from scratch each tick, which is just a counting sort over the enemies. Positions are copied into the
+ * grid in cell order, so a query reads consecutive memory rather than jumping around the EnemyStore.
+ */
+public class SpatialHash {
+    /** Rates enemies found by a range query. */
+    public interface Scorer {
+        /**
+         * @param enemies Store the enemy is in
+         * @param i Slot of an enemy within range
+         * @param distSq Squared distance from the centre of the query to the enemy
+         * @return Score for the enemy; the highest score wins, with ties going to the enemy that spawned first
+         */
+        float score(EnemyStore enemies, int i, float distSq);
+    }
+
+    /** Extra pixels added to queries so float rounding can never hide a touching enemy. */
+    private static final float MARGIN = 1;
+
+    private final World world;
+    private final int gridW, gridH;
+    /** Store the grid was last built from. */
+    private EnemyStore enemies;
+    /** Slot of each bucketed enemy, grouped by cell (in slot order within a cell). Removed ones are -1. */
+    private int[] slots = new int[64];
+    /** Position of each bucketed enemy, in the same order as slots. */
+    private float[] posX = new float[64], posY = new float[64];
+    /** Spawn order of each bucketed enemy, in the same order as slots, for breaking ties. */
+    private int[] spawnOrder = new int[64];
+    /** Cell index of the enemy in each slot. */
+    private int[] cellOf = new int[64];
+    /** Position in the grid's arrays of the enemy in each slot. */
+    private int[] posOf = new int[64];
+    /** Index into slots for the start of each cell (cellStart[c + 1] is the end). */
+    private final int[] cellStart;
+    /** Next free position in each cell while rebuilding, kept to avoid allocating on every rebuild. */
+    private final int[] next;
+    /** Cells with at least one enemy at the last rebuild, in cell order. */
+    private final int[] occupied;
+    private int occupiedCount = 0;
+    private int size = 0;
+    /** Largest half width / height of any enemy, so queries know how far out to look. */
+    private int maxHalfW = 0, maxHalfH = 0;
+
+    SpatialHash(World world) {
+        this.world = world;
+        this.gridW = world.getGridWidth();
+        this.gridH = world.getGridHeight();
+        this.cellStart = new int[gridW * gridH + 1];
+        this.next = new int[gridW * gridH];
+        this.occupied = new int[gridW * gridH];
+    }
+
+    /**
+     * Re-bucket every enemy at its current position.
+     * @param enemies Enemies to index
+     */
+    void rebuild(EnemyStore enemies) {
+        this.enemies = enemies;
+        size = enemies.size();
+        if (size > slots.length) {
+            int cap = Math.max(size, slots.length * 2);
+            slots = new int[cap];
+            posX = new float[cap];
+            posY = new float[cap];
+            spawnOrder = new int[cap];
+            cellOf = new int[cap];
+            posOf = new int[cap];
+        }
+        Arrays.fill(cellStart, 0);
+        maxHalfW = 0;
+        maxHalfH = 0;
+
+        // Count enemies per cell
+        for (int i = 0; i < size; i++) {
+            int cell = cellIndex(enemies.getX(i), enemies.getY(i));
+            cellOf[i] = cell;
+            cellStart[cell + 1]++;
+            maxHalfW = Math.max(maxHalfW, enemies.getHalfWidth(i));
+            maxHalfH = Math.max(maxHalfH, enemies.getHalfHeight(i));
+        }
+        occupiedCount = 0;
+        for (int c = 0; c < gridW * gridH; c++) {
+            // Before adding the running total in, this is still the cell's own count
+            if (cellStart[c + 1] > 0) {
+                occupied[occupiedCount++] = c;
+            }
+            cellStart[c + 1] += cellStart[c];
+        }
+
+        // Scatter enemies into their cells (slot order is kept within each cell)
+        System.arraycopy(cellStart, 0, next, 0, next.length);
+        for (int i = 0; i < size; i++) {
+            int pos = next[cellOf[i]]++;
+            slots[pos] = i;
+            posX[pos] = enemies.getX(i);
+            posY[pos] = enemies.getY(i);
+            spawnOrder[pos] = enemies.getSpawnOrder(i);
+            posOf[i] = pos;
+        }
+    }
+
+    /**
+     * Find the enemy touching a box that spawned first.
+     * Gives the same result as checking every enemy in spawn order with Entity.checkCollision, whatever order the
+     * store keeps them in.
+     * @param boxX Box centre x-position
+     * @param boxY Box centre y-position
+     * @param halfW Half the box's width, rounded down to whole pixels
+     * @param halfH Half the box's height, rounded down to whole pixels
+     * @return Slot of the first colliding enemy, or -1 if nothing collides
+     */
+    int firstCollision(float boxX, float boxY, int halfW, int halfH) {
+        float reachX = halfW + maxHalfW + MARGIN, reachY = halfH + maxHalfH + MARGIN;
+        int minX = clampX(world.toGrid(boxX - reachX)), maxX = clampX(world.toGrid(boxX + reachX));
+        int minY = clampY(world.toGrid(boxY - reachY)), maxY = clampY(world.toGrid(boxY + reachY));
+
+        int first = -1, firstOrder = Integer.MAX_VALUE;
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                int cell = x * gridH + y;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    if (slots[i] >= 0 && spawnOrder[i] < firstOrder
+                            && enemies.touches(slots[i], boxX, boxY, halfW, halfH)) {
+                        first = slots[i];
+                        firstOrder = spawnOrder[i];
+                    }
+                }
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Find the best enemy with its centre inside a circle, without any square roots.
+     * @param x Circle centre x-position
+     * @param y Circle centre y-position
+     * @param range Circle radius
+     * @param scorer Decides which of the enemies in range is best
+     * @return Slot of the best enemy, or -1 if nothing is in range
+     */
+    int best(float x, float y, float range, Scorer scorer) {
+        int minX = clampX(world.toGrid(x - range - MARGIN)), maxX = clampX(world.toGrid(x + range + MARGIN));
+        int minY = clampY(world.toGrid(y - range - MARGIN)), maxY = clampY(world.toGrid(y + range + MARGIN));
+        float rangeSq = range * range;
+
+        int best = -1, bestOrder = 0;
+        float bestScore = 0;
+        for (int gx = minX; gx <= maxX; gx++) {
+            for (int gy = minY; gy <= maxY; gy++) {
+                int cell = gx * gridH + gy;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    if (slots[i] < 0) {
+                        continue;
+                    }
+                    float dx = posX[i] - x, dy = posY[i] - y, distSq = dx * dx + dy * dy;
+                    if (distSq > rangeSq) {
+                        continue;
+                    }
+                    float score = scorer.score(enemies, slots[i], distSq);
+                    if (best < 0 || score > bestScore || (score == bestScore && spawnOrder[i] < bestOrder)) {
+                        best = slots[i];
+                        bestOrder = spawnOrder[i];
+                        bestScore = score;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Find the block of cells that best would search for a query around a point.
+     * @param box Array to put the lowest x, highest x, lowest y and highest y grid positions in (inclusive)
+     */
+    void cellsInRange(float x, float y, float range, int[] box) {
+        box[0] = clampX(world.toGrid(x - range - MARGIN));
+        box[1] = clampX(world.toGrid(x + range + MARGIN));
+        box[2] = clampY(world.toGrid(y - range - MARGIN));
+        box[3] = clampY(world.toGrid(y + range + MARGIN));
+    }
+
+    /**
+     * Check whether a cell had no enemies at the last rebuild (removed ones still count).
+     * @param cell Cell index, grid x-position * grid height + grid y-position
+     */
+    boolean isEmpty(int cell) {
+        return cellStart[cell] == cellStart[cell + 1];
+    }
+
+    /** Number of cells with an enemy at the last rebuild. */
+    int occupiedCount() { return occupiedCount; }
+
+    /** Index of the i-th cell with an enemy at the last rebuild (in cell order). */
+    int getOccupied(int i) { return occupied[i]; }
+
+    /** Number of cells (cell indices run from 0 up to this). */
+    int cells() { return gridW * gridH; }
+
+    int getGridHeight() { return gridH; }
+
+    /**
+     * Stop returning an enemy from queries (e.g. once it has died).
+     * @param i Slot of the enemy when the grid was built
+     */
+    void remove(int i) {
+        slots[posOf[i]] = -1;
+    }
+
+    /** Number of enemies in the last rebuild. */
+    int size() { return size; }
+
+    private int cellIndex(float x, float y) {
+        return clampX(world.toGrid(x)) * gridH + clampY(world.toGrid(y));
+    }
+
+    private int clampX(int gridX) {
+        return Math.min(Math.max(gridX, 0), gridW - 1);
+    }
+
+    private int clampY(int gridY) {
+        return Math.min(Math.max(gridY, 0), gridH - 1);
+    }
+}
@@ -0,0 +1,127 @@
+package control;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Hashed timer wheel: schedules int ids (e.g. tower indices) to go off at a time in ms.
+ * Each slot holds the ids due within one resolution-sized stretch of time. Ids due more than a full turn of the wheel
+ * ahead share a slot with nearer ones and are skipped until their turn comes round.
+ * Scheduling is O(1), and advancing only looks at the slots the clock passes, however many ids are waiting.
+ * Entries live in one shared pool, linked into a list per slot, so the wheel only grows with the number of ids
+ * waiting at once, not with how many happen to bunch up in one slot.
+ */
+class TimerWheel {
+    /** Marks the end of a slot's list. */
+    private static final int NONE = -1;
+
+    private final int resolution, mask;
+    /** First entry in each slot's list. */
+    private final int[] heads;
+    /** Pool of entries: id, time due, and the next entry in the same list (slot or free list). */
+    private int[] ids = new int[16], next = new int[16];
+    private long[] due = new long[16];
+    /** First unused entry in the pool. */
+    private int free;
+    /** Time of the last advance. */
+    private long now = 0;
+    private int size = 0;
+
+    /**
+     * @param slots Number of slots (rounded up to a power of two)
+     * @param resolution ms covered by each slot
+     */
+    TimerWheel(int slots, int resolution) {
+        int n = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+        this.resolution = resolution;
+        this.mask = n - 1;
+        this.heads = new int[n];
+        clear();
+    }
+
+    /**
+     * Schedule an id. The same id can be scheduled more than once.
+     * @param id Id to hand back when it's due
+     * @param time Time it's due; times already passed go off on the next advance
+     */
+    void schedule(int id, long time) {
+        if (free == NONE) {
+            grow(ids.length * 2);
+        }
+        int entry = free;
+        free = next[entry];
+        int slot = slot(Math.max(time, now));
+        ids[entry] = id;
+        due[entry] = time;
+        next[entry] = heads[slot];
+        heads[slot] = entry;
+        size++;
+    }
+
+    /**
+     * Move the clock forward and hand over every id now due, removing it from the wheel.
+     * Ids due at the same time come out in no particular order.
+     * @param time New time (not before the last one)
+     * @param expired Called with each id that's due
+     */
+    void advance(long time, IntConsumer expired) {
+        long first = now / resolution, last = time / resolution;
+        now = time;
+        if (size == 0) {
+            return;
+        }
+        // The slot the clock was in may still hold ids due later in it, so it's looked at again
+        long end = Math.min(last, first + mask);
+        for (long s = first; s <= end; s++) {
+            int slot = (int) (s & mask);
+            int prev = NONE;
+            for (int entry = heads[slot]; entry != NONE;) {
+                int following = next[entry];
+                if (due[entry] <= time) {
+                    // Unlink and free the entry before calling out, which may schedule more
+                    if (prev == NONE) {
+                        heads[slot] = following;
+                    } else {
+                        next[prev] = following;
+                    }
+                    next[entry] = free;
+                    free = entry;
+                    size--;
+                    expired.accept(ids[entry]);
+                } else {
+                    prev = entry;
+                }
+                entry = following;
+            }
+        }
+    }
+
+    /** Remove every id. */
+    void clear() {
+        Arrays.fill(heads, NONE);
+        for (int i = 0; i < ids.length; i++) {
+            next[i] = i + 1 < ids.length ? i + 1 : NONE;
+        }
+        free = 0;
+        size = 0;
+    }
+
+    /** Number of ids waiting. */
+    int size() { return size; }
+
+    /** Add entries to the pool, all of them free. */
+    private void grow(int cap) {
+        int old = ids.length;
+        ids = Arrays.copyOf(ids, cap);
+        due = Arrays.copyOf(due, cap);
+        next = Arrays.copyOf(next, cap);
+        for (int i = old; i < cap; i++) {
+            next[i] = i + 1 < cap ? i + 1 : NONE;
+        }
+        free = old;
+    }
+
+    private int slot(long time) {
+        return (int) ((time / resolution) & mask);
+    }
+}
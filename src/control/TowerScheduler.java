@@ -0,0 +1,160 @@
+package control;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+/**
+ * Decides which towers look for a target each tick, so towers that can't shoot aren't touched.
+ * A tower that has just shot waits in a timer wheel until its cooldown is over. It's then parked until an enemy is on
+ * one of the cells its range touches. Those are the cells SpatialHash.best searches, and World.findTarget never finds
+ * an enemy outside them, so towers search on exactly the ticks they would have found something by searching every tick.
+ * Each tower subscribes to the cells in its range when it's placed. Every update only looks at the cells whose
+ * occupancy changed since the last one and wakes (or puts back to sleep) the towers subscribed to them, so a parked
+ * tower with nothing nearby costs nothing, however many there are.
+ * Towers are known by their index in the world's tower list.
+ */
+class TowerScheduler {
+    /** Slots in the cooldown wheel, one per tick (a turn is about five seconds, longer than any fire rate). */
+    private static final int SLOTS = 256;
+
+    private final TimerWheel cooldowns = new TimerWheel(SLOTS, Simulation.TICK_MS);
+    /** Grid the towers search. */
+    private final SpatialHash grid;
+    /** Towers off cooldown, whether or not there's an enemy nearby. */
+    private final BitSet parked = new BitSet();
+    /** Parked towers with an enemy on at least one cell in range: the ones to search. */
+    private final BitSet ready = new BitSet();
+    private int towers = 0;
+    /** Towers subscribed to each cell (those whose range touches it), indexed by cell. Towers never move. */
+    private final int[][] subscribers;
+    private final int[] subscriberCounts;
+    /** Number of cells with an enemy in each tower's range, as of the last update. */
+    private int[] occupiedInRange = new int[16];
+    /** Whether each cell had an enemy at the last update, and a list of those cells. */
+    private final boolean[] occupied;
+    private final int[] occupiedList;
+    private int occupiedCount = 0;
+    private final int[] box = new int[4];
+    /** Towers to search this tick, in index order. */
+    private int[] dueList = new int[16];
+    private final IntConsumer park = this::park;
+
+    /** @param grid Grid the towers search, which must be rebuilt before each update */
+    TowerScheduler(SpatialHash grid) {
+        this.grid = grid;
+        this.subscribers = new int[grid.cells()][];
+        this.subscriberCounts = new int[grid.cells()];
+        this.occupied = new boolean[grid.cells()];
+        this.occupiedList = new int[grid.cells()];
+    }
+
+    /**
+     * Start scheduling a newly placed tower. It's parked straight away, so it can shoot on the next tick.
+     * @param index Index of the tower (one more than the last tower added)
+     * @param x Tower x-position
+     * @param y Tower y-position
+     * @param range Tower range
+     */
+    void add(int index, float x, float y, float range) {
+        // Room for every tower to be due at once, so update never has to grow it
+        if (index == dueList.length) {
+            dueList = Arrays.copyOf(dueList, dueList.length * 2);
+            occupiedInRange = Arrays.copyOf(occupiedInRange, occupiedInRange.length * 2);
+        }
+        occupiedInRange[index] = 0;
+        grid.cellsInRange(x, y, range, box);
+        for (int gx = box[0]; gx <= box[1]; gx++) {
+            for (int gy = box[2]; gy <= box[3]; gy++) {
+                int cell = gx * grid.getGridHeight() + gy;
+                subscribe(cell, index);
+                if (occupied[cell]) {
+                    occupiedInRange[index]++;
+                }
+            }
+        }
+        towers = index + 1;
+        park(index);
+    }
+
+    /** End every cooldown, e.g. when a wave starts. */
+    void parkAll() {
+        cooldowns.clear();
+        for (int tower = 0; tower < towers; tower++) {
+            park(tower);
+        }
+    }
+
+    /** Start a tower's cooldown after it shoots. */
+    void shot(int index, long readyAt) {
+        parked.clear(index);
+        ready.clear(index);
+        cooldowns.schedule(index, readyAt);
+    }
+
+    /**
+     * Find the towers to search this tick: those off cooldown with an enemy on a cell in range.
+     * @param clock Game time in ms
+     * @return Number of towers found; get them with getDue
+     */
+    int update(long clock) {
+        cooldowns.advance(clock, park);
+
+        // Cells that have emptied since the last update
+        for (int i = 0; i < occupiedCount; i++) {
+            int cell = occupiedList[i];
+            if (grid.isEmpty(cell)) {
+                occupied[cell] = false;
+                for (int s = 0; s < subscriberCounts[cell]; s++) {
+                    int tower = subscribers[cell][s];
+                    if (--occupiedInRange[tower] == 0) {
+                        ready.clear(tower);
+                    }
+                }
+            }
+        }
+        // Cells that have filled since the last update
+        occupiedCount = grid.occupiedCount();
+        for (int i = 0; i < occupiedCount; i++) {
+            int cell = grid.getOccupied(i);
+            occupiedList[i] = cell;
+            if (!occupied[cell]) {
+                occupied[cell] = true;
+                for (int s = 0; s < subscriberCounts[cell]; s++) {
+                    int tower = subscribers[cell][s];
+                    if (occupiedInRange[tower]++ == 0 && parked.get(tower)) {
+                        ready.set(tower);
+                    }
+                }
+            }
+        }
+
+        int count = 0;
+        for (int tower = ready.nextSetBit(0); tower >= 0; tower = ready.nextSetBit(tower + 1)) {
+            dueList[count++] = tower;
+        }
+        return count;
+    }
+
+    /** Index of the i-th tower found by the last update (in index order). */
+    int getDue(int i) { return dueList[i]; }
+
+    /** Take a tower off cooldown, ready to search as soon as an enemy is in range. */
+    private void park(int tower) {
+        parked.set(tower);
+        if (occupiedInRange[tower] > 0) {
+            ready.set(tower);
+        }
+    }
+
+    private void subscribe(int cell, int tower) {
+        int n = subscriberCounts[cell];
+        if (subscribers[cell] == null) {
+            subscribers[cell] = new int[4];
+        } else if (n == subscribers[cell].length) {
+            subscribers[cell] = Arrays.copyOf(subscribers[cell], n * 2);
+        }
+        subscribers[cell][n] = tower;
+        subscriberCounts[cell]++;
+    }
+}
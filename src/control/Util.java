@@ -1,16 +1,32 @@
 package control;
 
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Random;
 
+import org.newdawn.slick.Font;
 import org.newdawn.slick.Graphics;
 import org.newdawn.slick.TrueTypeFont;
 
 /** Contains utility methods for use throughout the project. */
 public final class Util {
     private static final Random RANDOM = new Random(System.nanoTime());
+    /** Widths of strings already measured, by font. */
+    private static final Map<Font, Map<String, Integer>> WIDTHS = new IdentityHashMap<>();
+    /** Strings remembered per font before starting again (e.g. after a counter has shown many values). */
+    private static final int MAX_WIDTHS = 1024;
     
     private Util() {} // prevents instantiation from outside the class
     
+    /**
+     * Reseed the random number generator, so a recorded game can be replayed exactly.
+     * @param seed New seed
+     */
+    public static void setSeed(long seed) {
+        RANDOM.setSeed(seed);
+    }
+
     /** Generate a random number.
      * @param num Closed maximum value
      * @return Random value between 0 (inclusive) and the number (exclusive)
@@ -19,6 +35,25 @@ public final class Util {
         return RANDOM.nextInt(num);
     }
 
+    /**
+     * Measure the width of a string, only asking the font the first time each string is seen.
+     * @param font Font the string is drawn in
+     * @param str String to measure
+     * @return Width in pixels
+     */
+    public static int getWidth(Font font, String str) {
+        Map<String, Integer> widths = WIDTHS.computeIfAbsent(font, f -> new HashMap<>());
+        Integer width = widths.get(str);
+        if (width == null) {
+            if (widths.size() >= MAX_WIDTHS) {
+                widths.clear();
+            }
+            width = font.getWidth(str);
+            widths.put(str, width);
+        }
+        return width;
+    }
+
     /** Write horizontally centered text.
      * @param g Graphics handler
      * @param str String to write
@@ -26,7 +61,7 @@ public final class Util {
      * @param y Y position
      */
     public static void writeCentered(Graphics g, String str, float x, float y) {
-        int offset = g.getFont().getWidth(str) / 2;
+        int offset = getWidth(g.getFont(), str) / 2;
         g.drawString(str, x - offset, y);
     }
     
@@ -37,7 +72,7 @@ public final class Util {
      * @param y Y position
      */
     public static void writeCentered(TrueTypeFont ttf, String str, float x, float y) {
-        int offset = ttf.getWidth(str) / 2;
+        int offset = getWidth(ttf, str) / 2;
         ttf.drawString(x - offset, y, str);
     }
 }
\ No newline at end of file
@@ -1,47 +1,279 @@
 package control;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Scanner;
 
 import game.Enemy;
 
-/** Waves contain a list of their enemy spawns. */
+/**
+ * Waves contain a queue of their enemy spawns, ordered by spawn time.
+ * Spawns are stored as run-length sequences and only expanded into individual instructions when the wave is played.
+ * The queue is a sorted array with a cursor: adding spawns only marks it unsorted,
+ * and it's sorted once (stably, so equal times keep the order they were added in) before the next spawn is taken.
+ */
 public class Wave {
-    private List<SpawnInstruction> instructions = new LinkedList<>();
-    
-    /** Individual enemy spawn instructions, with enemy time and type. */
-    private class SpawnInstruction {
-        Enemy.Type enemy;
-        float spawnTime;
-
-        SpawnInstruction(Enemy.Type enemy, float spawnTime) {
+    private static final Comparator<SpawnInstruction> BY_TIME = Comparator.comparingDouble(si -> si.spawnTime);
+    /** Compiled wave files start with "AVWB". */
+    private static final int MAGIC = 0x41565742;
+    /** Bumped whenever the layout changes (2: spawn points are ints rather than bytes). */
+    private static final int VERSION = 2;
+
+    private List<Sequence> sequences = new ArrayList<>();
+    /** Number of sequences already expanded into instructions. */
+    private int expanded = 0;
+    private SpawnInstruction[] instructions = new SpawnInstruction[16];
+    /** Number of instructions, and the index of the next one due. */
+    private int size = 0, next = 0;
+    private boolean sorted = true;
+    private int maxSpawnPoint = 0;
+
+    /** Individual enemy spawn instructions, with enemy time, type and spawn point. */
+    static class SpawnInstruction {
+        final Enemy.Type enemy;
+        final float spawnTime;
+        final int spawnPoint;
+
+        SpawnInstruction(Enemy.Type enemy, float spawnTime, int spawnPoint) {
             this.enemy = enemy;
             this.spawnTime = spawnTime;
+            this.spawnPoint = spawnPoint;
         }
     }
-    
+
+    /** A run of enemies of one type, spawned at a fixed rate. Times are in seconds, as written in wave files. */
+    static class Sequence {
+        final Enemy.Type enemy;
+        final int count, spawnPoint;
+        final float rate, start;
+
+        Sequence(Enemy.Type enemy, int count, float rate, float start, int spawnPoint) {
+            this.enemy = enemy;
+            this.count = count;
+            this.rate = rate;
+            this.start = start;
+            this.spawnPoint = spawnPoint;
+        }
+    }
+
+    /**
+     * Load every wave in a wave file, either text or compiled (see WaveCompiler).
+     * @param path Path to the wave file (one wave per line, see assets/waves/examplegamefile.txt)
+     * @return The waves in order
+     */
+    public static List<Wave> load(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            if (channel.size() >= 4) {
+                ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buf.getInt(0) == MAGIC) {
+                    return loadCompiled(buf, path);
+                }
+            }
+        }
+        return loadText(path);
+    }
+
+    /** Parse a text wave file. */
+    private static List<Wave> loadText(String path) throws IOException {
+        try (Scanner scanner = new Scanner(new File(path))) {
+            // Read line-by-line
+            scanner.useDelimiter("[\\r\\n;]+");
+
+            ArrayList<Wave> waves = new ArrayList<Wave>();
+
+            // Wave-by-wave
+            while (scanner.hasNext()) {
+                String wave = scanner.next();
+                Wave currWave = new Wave();
+                waves.add(currWave);
+
+                // Split into spawn sequences - enemytype/enemynum/spawnrate/starttime[/spawnpoint]
+                String[] spawnSequences = wave.split(" ");
+                int seqs = spawnSequences.length;
+
+                for (int i = seqs-1; i >= 0; i--) {
+                    String seq = spawnSequences[i];
+
+                    // Extract info
+                    String[] seqInfo = seq.split("/");
+                    Enemy.Type enemy = Enemy.Type.valueOf(seqInfo[0].toUpperCase());
+                    int enemyNum = Integer.parseInt(seqInfo[1]);
+                    float spawnRate = Float.parseFloat(seqInfo[2]), spawnTime = Float.parseFloat(seqInfo[3]);
+                    int spawnPoint = seqInfo.length > 4 ? Integer.parseInt(seqInfo[4]) : 0;
+                    if (spawnPoint < 0) {
+                        throw new IOException(negativeSpawnPoint(spawnPoint) + ": " + path);
+                    }
+
+                    currWave.addSequence(new Sequence(enemy, enemyNum, spawnRate, spawnTime, spawnPoint));
+                }
+            }
+            return waves;
+        }
+    }
+
+    /** Read compiled waves out of a (memory mapped) buffer. */
+    private static List<Wave> loadCompiled(ByteBuffer buf, String path) throws IOException {
+        try {
+            return readCompiled(buf, path);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Compiled wave file is truncated: " + path, e);
+        }
+    }
+
+    private static List<Wave> readCompiled(ByteBuffer buf, String path) throws IOException {
+        buf.position(4);
+        if (buf.get() != VERSION) {
+            throw new IOException("Compiled wave file is from an incompatible version: " + path);
+        }
+        Enemy.Type[] types = Enemy.Type.values();
+        int waveCount = buf.getInt();
+        List<Wave> waves = new ArrayList<>(waveCount);
+        for (int w = 0; w < waveCount; w++) {
+            Wave wave = new Wave();
+            int seqs = buf.getInt();
+            for (int i = 0; i < seqs; i++) {
+                int ordinal = buf.get() & 0xFF;
+                if (ordinal >= types.length) {
+                    throw new IOException("Compiled wave file has an unknown enemy type (" + ordinal + "): " + path);
+                }
+                Enemy.Type enemy = types[ordinal];
+                int count = buf.getInt();
+                float rate = buf.getFloat(), start = buf.getFloat();
+                int spawnPoint = buf.getInt();
+                if (spawnPoint < 0) {
+                    throw new IOException(negativeSpawnPoint(spawnPoint) + ": " + path);
+                }
+                wave.addSequence(new Sequence(enemy, count, rate, start, spawnPoint));
+            }
+            waves.add(wave);
+        }
+        return waves;
+    }
+
     /**
-     * Check if enemies are due to be spawned.
+     * Write waves in the compiled format read by load.
+     * @param waves Waves to write (not yet played)
+     * @param path File to write to
+     * @throws IllegalArgumentException If a sequence has a negative spawn point
+     */
+    static void saveCompiled(List<Wave> waves, String path) throws IOException {
+        for (Wave wave : waves) {
+            for (Sequence seq : wave.sequences) {
+                if (seq.spawnPoint < 0) {
+                    throw new IllegalArgumentException(negativeSpawnPoint(seq.spawnPoint));
+                }
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(waves.size());
+            for (Wave wave : waves) {
+                out.writeInt(wave.sequences.size());
+                for (Sequence seq : wave.sequences) {
+                    out.writeByte(seq.enemy.ordinal());
+                    out.writeInt(seq.count);
+                    out.writeFloat(seq.rate);
+                    out.writeFloat(seq.start);
+                    out.writeInt(seq.spawnPoint);
+                }
+            }
+        }
+    }
+
+    /** Error message for a negative spawn point, the same whichever way the waves were read or written. */
+    private static String negativeSpawnPoint(int spawnPoint) {
+        return "Spawn points can't be negative (got " + spawnPoint + ")";
+    }
+
+    /**
+     * Take the next spawn if it's due. Call repeatedly to get every spawn due by now.
      * @param timer The time since the start of the wave
-     * @return The name of the enemy to be spawned as an enum
+     * @return The earliest spawn instruction due, or null if none are due
+     */
+    SpawnInstruction poll(long timer) {
+        sort();
+        if (next < size && timer >= instructions[next].spawnTime) {
+            SpawnInstruction si = instructions[next];
+            instructions[next++] = null;
+            return si;
+        }
+        return null;
+    }
+
+    /**
+     * Queue a sequence of spawns. It's expanded into instructions the next time the wave is polled.
+     * @param seq The spawn sequence
+     */
+    void addSequence(Sequence seq) {
+        sequences.add(seq);
+        maxSpawnPoint = Math.max(maxSpawnPoint, seq.spawnPoint);
+    }
+
+    /**
+     * Queue an enemy spawn.
+     * @param type Enemy type
+     * @param spawnTime Time since the start of the wave (in ms)
+     * @param spawnPoint Which of the map's start positions to spawn at
+     */
+    void addInstruction(Enemy.Type type, float spawnTime, int spawnPoint) {
+        if (size == instructions.length) {
+            instructions = Arrays.copyOf(instructions, Math.max(size * 2, 16));
+        }
+        instructions[size++] = new SpawnInstruction(type, spawnTime, spawnPoint);
+        maxSpawnPoint = Math.max(maxSpawnPoint, spawnPoint);
+        if (size - 1 > next && instructions[size - 2].spawnTime > spawnTime) {
+            sorted = false;
+        }
+    }
+
+    /**
+     * Find when the next spawn is due, so it can be waited for rather than polled.
+     * @return Time since the start of the wave (in whole ms, rounded up) that poll will next return a spawn at,
+     *         or -1 if there are no spawns left
      */
-    Enemy.Type trySpawn(long timer) {
-        Iterator<SpawnInstruction> itr = instructions.iterator();
-        while (itr.hasNext()) {
-            SpawnInstruction si = itr.next();
-            if (timer >= si.spawnTime) {
-                itr.remove();
-                return si.enemy;
+    long nextSpawnTime() {
+        sort();
+        return next < size ? (long) Math.ceil(instructions[next].spawnTime) : -1;
+    }
+
+    /** Expand any new sequences and sort the spawns still to come, if they need it. */
+    private void sort() {
+        expand();
+        if (!sorted) {
+            Arrays.sort(instructions, next, size, BY_TIME);
+            sorted = true;
+        }
+    }
+
+    /** Generate the individual instructions for any sequences not yet expanded. */
+    private void expand() {
+        while (expanded < sequences.size()) {
+            Sequence seq = sequences.get(expanded++);
+            float spawnTime = seq.start;
+            for (int j = seq.count; j >= 1; j--) {
+                addInstruction(seq.enemy, spawnTime*1000, seq.spawnPoint);
+                spawnTime += seq.rate;
             }
         }
-        return null; // default failure value
     }
-    
-    void addInstruction(String enemy, float spawnTime) {
-        Enemy.Type type = Enemy.Type.valueOf(enemy.toUpperCase());
-        instructions.add(new SpawnInstruction(type, spawnTime));
+
+    boolean isFinished() {
+        expand();
+        return next == size;
     }
-    
-    boolean isFinished() { return instructions.isEmpty(); }
-}
\ No newline at end of file
+
+    int getMaxSpawnPoint() { return maxSpawnPoint; }
+}
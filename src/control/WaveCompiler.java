@@ -0,0 +1,31 @@
+package control;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Compiles a text wave file into the binary format, which loads without any text parsing.
+ * Sequences stay run-length encoded, enemies are stored by ordinal and times keep the exact float values of the text.
+ */
+public final class WaveCompiler {
+    private WaveCompiler() {} // prevents instantiation from outside the class
+
+    /**
+     * Usage: WaveCompiler [text wave file] [compiled output file]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: WaveCompiler <waves.txt> <waves.wavb>");
+            System.exit(1);
+        }
+        long start = System.nanoTime();
+        List<Wave> waves = Wave.load(args[0]);
+        try {
+            Wave.saveCompiled(waves, args[1]);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Can't compile " + args[0] + ": " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.printf("Compiled %d waves to %s in %.1f ms%n", waves.size(), args[1], (System.nanoTime() - start) / 1e6);
+    }
+}
@@ -1,96 +1,177 @@
 package control;
 
-import java.awt.Font;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
 import org.newdawn.slick.Color;
 import org.newdawn.slick.Graphics;
+import org.newdawn.slick.Image;
 import org.newdawn.slick.SlickException;
-import org.newdawn.slick.TrueTypeFont;
-import org.newdawn.slick.geom.Vector2f;
 import org.newdawn.slick.openal.Audio;
-import org.newdawn.slick.tiled.TileSet;
 import org.newdawn.slick.tiled.TiledMap;
 
 import game.Enemy;
+import game.SpriteBatch;
+import game.SpriteRegistry;
 import game.Projectile;
 import game.StaticEntity;
 import game.Tower;
 import ui.Button;
+import ui.Fonts;
 import ui.TextSprite;
 
-/** Handles all the game logic for a level. Created by App. */
+/**
+ * Handles all the game logic for a level. Created by App.
+ * A world without a TiledMap is headless: it has no interface, plays no sounds and never needs OpenGL.
+ */
 public class World {
-    private static final Font
-            TINY_FONT = new Font("Verdana", Font.PLAIN, 11),
-            SMALL_FONT = new Font("Verdana", Font.PLAIN, 15),
-            MEDIUM_FONT = new Font("Verdana", Font.BOLD, 20),
-            LARGE_FONT = new Font("Verdana", Font.BOLD, 40);
-    public static final TrueTypeFont
-            TINY_TTF = new TrueTypeFont(TINY_FONT, true),
-            SMALL_TTF = new TrueTypeFont(SMALL_FONT, true),
-            MEDIUM_TTF = new TrueTypeFont(MEDIUM_FONT, true),
-            LARGE_TTF =  new TrueTypeFont(LARGE_FONT, true);
+    /** Smallest number of enemies / towers worth handing to another thread. */
+    private static final int ENEMIES_PER_TASK = 512, TOWERS_PER_TASK = 32;
+    /** Slots in the event wheel, one per tick. */
+    private static final int EVENT_SLOTS = 256;
+    /** Event id for the current wave's next spawn being due. */
+    private static final int SPAWN_DUE = 0;
+    /** Tile flags, as packed by getTileFlags. */
+    public static final byte IS_WALL = 1, HOLDS_DEFENCE = 2;
+    /** Shade over the tiles a held tower could be placed on. */
+    private static final Color BUILDABLE_SHADE = new Color(0, 255, 0, 40);
 
     private int w, h, tileSize, sidebarW;
-    private float startX, startY;
+    /** Enemy spawn locations, indexed by spawn point. */
+    private float[] startX, startY;
     private int health = 1, waveNum = 0, money = 100;
+    /** Number of enemies that have reached Alistair. */
+    private int leaks = 0;
     private long timer = 0;
+    /** Game time in ms since the world was created (unlike timer, it doesn't restart each wave). */
+    private long clock = 0;
+    /** Value of clock when the current wave started. */
+    private long waveStart = 0;
+    /**
+     * Things due to happen at a game time (clock), so tick doesn't check for them every time. The only one is the
+     * current wave's next spawn; there are no other delayed effects in the game yet.
+     */
+    private final TimerWheel events = new TimerWheel(EVENT_SLOTS, Simulation.TICK_MS);
+    /** Set by onEvent when a spawn comes due, and cleared once tick has spawned everything due. */
+    private boolean spawnDue = false;
+    private final IntConsumer onEvent = id -> {
+        if (id == SPAWN_DUE) {
+            spawnDue = true;
+        }
+    };
+    /** Number of ticks since the world was created. */
+    private long ticks = 0;
+    /** Where player inputs get recorded, or null if they aren't. */
+    private InputLog recorder = null;
     private Tile alistair;
-    private Tower myTower = null,       // Tower currently being placed
+    /** Distance left along the path beyond which an enemy can't be touching Alistair. */
+    private float alistairReach;
+    // Set by input and cleared by endGame (possibly on the simulation thread), read while drawing
+    private volatile Tower myTower = null,       // Tower currently being placed
             selectedTower = null; // Placed tower that has been selected
     private boolean waveComplete = true;
     private Button nextWave;
     private boolean gameOver = false;
 
+    private LevelMap level;
+    /** Map to draw, or null if headless. */
     private TiledMap map;
-    private Tile[][] tiles;
+    /** The map's tiles drawn once into a texture (null if offscreen buffers aren't supported). */
+    private Image mapCache;
+    /** Whether mapCache needs drawing again before it's used. */
+    private boolean mapDirty = true;
+    /** The sidebar drawn into a texture (null if offscreen buffers aren't supported). */
+    private Image hudCache;
+    /** Whether the sidebar needs drawing again, e.g. after a hover change. */
+    private boolean hudDirty = true;
+    /** Values shown on the interface when it was last drawn. */
+    private int hudWave = -1, hudMoney = -1, hudHealth = -1;
+    private String healthText;
+    /** Flags (IS_WALL, HOLDS_DEFENCE) of each tile, indexed x * grid height + y. */
+    private byte[] tileFlags;
+    /**
+     * Cells a tower can be placed on right now: tiles that hold defences, less any a tower there would touch.
+     * Indexed x * grid height + y (like FlowField), and updated as towers are placed.
+     */
+    private BitSet buildable;
     private List<Wave> waves;
-    private List<Projectile> projectiles = new LinkedList<>();
-    private List<Tower> towers = new LinkedList<>();
+    /** Projectiles in the order they were fired. */
+    private ProjectileStore projectiles;
+    private final EntityStore<Tower> towers = new EntityStore<>();
     private List<TextSprite> sidebarIcons = new ArrayList<>();
     private List<Button> buttons = new ArrayList<>();
-    /** Enemy path. 3D array for x-coord, y-coord and direction for enemy to move in. */
-    private int[][][] path;
-    /** List of enemies in order of creation (oldest first). */
-    private List<Enemy> enemies = new LinkedList<>();
+    /** Direction for enemies to move in and distance left to Alistair from every tile. */
+    private FlowField path;
+    /** Enemies in order of progress along the path, leader first (ties keep the order they spawned in). */
+    private EnemyStore enemies;
+    /** Read-only view handed out by getTowers, made once so getting it doesn't allocate. */
+    private final List<Tower> towerView = Collections.unmodifiableList(towers);
+    /** Enemies bucketed by tile, rebuilt every tick for tower targeting and projectile collisions. */
+    private SpatialHash enemyGrid;
+    /** Picks the towers that are off cooldown and have an enemy nearby, so the rest aren't touched each tick. */
+    private TowerScheduler towerSchedule;
+    private SpriteRegistry sprites;
+    /** Reused every frame to draw each layer of sprites grouped by texture. */
+    private final SpriteBatch batch = new SpriteBatch();
+    /** Pool that enemy movement and tower aiming are split across, or null to run everything on the calling thread. */
+    private ForkJoinPool pool = null;
+    private final Body advanceEnemies = (from, to) -> enemies.advance(from, to, this);
+    private final Body aimTowers = (from, to) -> {
+        for (int i = from; i < to; i++) {
+            towers.get(towerSchedule.getDue(i)).aim();
+        }
+    };
 
     /**
      * Creates the world.
      * @param w Map width
      * @param h Map height
-     * @param map The tiled map to render
+     * @param level The level's tile data
+     * @param map The tiled map to render (null to run headless)
      * @param waves Data on waves and enemy spawn timing
      */
-    public World(int w, int h, int sidebarW, TiledMap map, List<Wave> waves) {
+    public World(int w, int h, int sidebarW, LevelMap level, TiledMap map, List<Wave> waves) throws SlickException {
         // Assert that the map has square tiles
-        if (map.getTileWidth() != map.getTileHeight()) {
+        if (level.getTileWidth() != level.getTileHeight()) {
             throw new IllegalArgumentException("Tiled map must have square tiles");
         }
-        this.tileSize = map.getTileWidth();
+        this.tileSize = level.getTileWidth();
 
         this.w = w;
         this.h = h;
         this.sidebarW = sidebarW;
+        this.level = level;
         this.map = map;
         this.waves = waves;
 
-        // Get the enemy spawn location
-        String[] pos = map.getMapProperty("startPos", "").split(",");
-        try {
-            startX = toPos(Integer.parseInt(pos[0]));
-            startY = toPos(Integer.parseInt(pos[1]));
-        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
-            throw new IllegalArgumentException("Tiled map must have an enemy starting position");
+        // Get the enemy spawn locations ("x,y", with extra spawn points separated by semicolons)
+        String[] starts = level.getMapProperty("startPos", "").split(";");
+        startX = new float[starts.length];
+        startY = new float[starts.length];
+        for (int s = 0; s < starts.length; s++) {
+            String[] pos = starts[s].trim().split(",");
+            try {
+                startX[s] = toPos(Integer.parseInt(pos[0]));
+                startY[s] = toPos(Integer.parseInt(pos[1]));
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Tiled map must have an enemy starting position");
+            }
+        }
+        for (Wave wave : waves) {
+            if (wave.getMaxSpawnPoint() >= starts.length) {
+                throw new IllegalArgumentException("Waves use spawn point " + wave.getMaxSpawnPoint()
+                        + " but the map only has " + starts.length);
+            }
         }
 
         // Get Alistair's location
-        String[] alistairPos = map.getMapProperty("alistairPos", "").split(",");
+        String[] alistairPos = level.getMapProperty("alistairPos", "").split(",");
         int alistairX, alistairY;
         try {
             alistairX = Integer.parseInt(alistairPos[0]);
@@ -100,55 +181,56 @@ public class World {
         }
 
         // Extract the tile data into an array for easy access
-        tiles = new Tile[map.getWidth()][map.getHeight()];
-        TileSet kenneyTileSet = map.getTileSet(0);
-        TileSet customTileSet = map.getTileSet(1);
-
-        for (int x = 0; x < map.getWidth(); x++) {
-            for (int y = 0; y < map.getHeight(); y++) {
-                int id = map.getTileId(x, y, 0);
-                if (id < 300) {
-                    tiles[x][y] = new Tile(x, y, kenneyTileSet.getProperties(id));
-                } else {
-                    tiles[x][y] = new Tile(x, y, customTileSet.getProperties(id));
-                }
+        int gridH = level.getHeight();
+        tileFlags = new byte[level.getWidth() * gridH];
+        buildable = new BitSet(tileFlags.length);
+        boolean[] open = new boolean[tileFlags.length];
+        for (int x = 0; x < level.getWidth(); x++) {
+            for (int y = 0; y < gridH; y++) {
+                byte flags = readTileFlags(x, y, level.getTileProperties(x, y));
+                tileFlags[x * gridH + y] = flags;
+                buildable.set(x * gridH + y, (flags & HOLDS_DEFENCE) != 0);
+                open[x * gridH + y] = (flags & IS_WALL) == 0;
             }
         }
-        alistair = tiles[alistairX][alistairY];
-
-        // Traverse the enemy path and store direction values in a grid
-        path = new int[map.getWidth()][map.getHeight()][2];
-        int x = toGrid(startX), y = toGrid(startY);
-        int i = inwardDirX(x);
-        int j = inwardDirY(y);
-        if (i == 0 && j == 0) {
-            throw new IllegalArgumentException("Starting position must be outside grid");
-        }
-        while (!inGridBounds(x, y)) {
-            x += i;
-            y += j;
-        }
-        while (x != alistairX || y != alistairY) {
-            // Move along the path
-            // Check if we've hit a wall yet
-            if (!inGridBounds(x + i, y + j) || tiles[x + i][y + j].isWall()) {
-                // OK, try turning left (anti-clockwise)
-                int old_i = i;
-                i = j;
-                j = -old_i;
-
-                // Check again
-                if (!inGridBounds(x + i, y + j) || tiles[x + i][y + j].isWall()) {
-                    // Failed, turn right then (need to do a 180)
-                    i = -i;
-                    j = -j;
-                }
+        alistair = new Tile(alistairX, alistairY);
+        enemyGrid = new SpatialHash(this);
+        towerSchedule = new TowerScheduler(enemyGrid);
+
+        // Load every sprite image now so nothing is loaded mid-game
+        sprites = new SpriteRegistry(isHeadless());
+        enemies = new EnemyStore(sprites);
+        projectiles = new ProjectileStore(sprites);
+
+        // Find the shortest way to Alistair from every tile
+        path = new FlowField(level.getWidth(), level.getHeight(), open, alistairX, alistairY);
+
+        // Path distance is measured from tile centres, so allow a tile and a half either side plus a tick of movement
+        float maxEnemySize = 0;
+        for (Enemy.Type t : Enemy.Type.values()) {
+            maxEnemySize = Math.max(maxEnemySize, Math.max(sprites.get(t).getWidth(), sprites.get(t).getHeight()));
+        }
+        alistairReach = maxEnemySize + 3 * tileSize;
+
+        // Check that enemies can get from each spawn point to Alistair
+        for (int s = 0; s < starts.length; s++) {
+            int x = toGrid(startX[s]), y = toGrid(startY[s]);
+            int i = inwardDirX(x);
+            int j = inwardDirY(y);
+            if (i == 0 && j == 0) {
+                throw new IllegalArgumentException("Starting position must be outside grid");
+            }
+            while (!inGridBounds(x, y)) {
+                x += i;
+                y += j;
+            }
+            if (path.getDistance(x, y) == FlowField.UNREACHABLE) {
+                throw new IllegalArgumentException("There is no path from spawn point " + s + " to Alistair");
             }
-            // Update x, y and our direction
-            path[x][y][0] = i;
-            path[x][y][1] = j;
-            x += i;
-            y += j;
+        }
+
+        if (isHeadless()) {
+            return;
         }
 
         // Create sidebar icons for buying towers
@@ -157,31 +239,39 @@ public class World {
         float scale = App.SCALE_FACTOR;
         float xPos = w*scale - sidebarW*scale/2, yPos = 100;
         for (Tower.Type t : Tower.Type.values()) {
-            try {
-                TextSprite icon = new TextSprite(xPos, yPos, t.getImage());
-                icon.setText(TextSprite.Mode.BELOW, t.toString(), SMALL_TTF);
-                icon.setText(TextSprite.Mode.HOVER, String.valueOf(t.getCost()), MEDIUM_TTF);
-                sidebarIcons.add(icon);
-                yPos += 100;
-            } catch (SlickException e) {
-                e.printStackTrace();
-            }
+            TextSprite icon = new TextSprite(xPos, yPos, sprites.get(t));
+            icon.setText(TextSprite.Mode.BELOW, t.toString(), Fonts.SMALL_TTF);
+            icon.setText(TextSprite.Mode.HOVER, String.valueOf(t.getCost()), Fonts.MEDIUM_TTF);
+            sidebarIcons.add(icon);
+            yPos += 100;
         }
 
         // New wave button
         float btnXPos = w*scale - sidebarW*scale/2, btnYPos = 500;
-        nextWave = new Button(btnXPos, btnYPos, "Next wave", MEDIUM_TTF, 5, true, Color.green);
+        nextWave = new Button(btnXPos, btnYPos, "Next wave", Fonts.MEDIUM_TTF, 5, true, Color.green);
         nextWave.setCols(Color.green, Color.black, Color.white);
         buttons.add(nextWave);
 
         // Play intro sound
-        AudioController.play("intro");
+        play("intro");
+    }
+
+    /**
+     * Creates a headless world, which only runs the game logic.
+     * Uses the same dimensions as the game window so the simulation matches a real game.
+     * @param level The level's tile data
+     * @param waves Data on waves and enemy spawn timing
+     */
+    public World(LevelMap level, List<Wave> waves) throws SlickException {
+        this((int)App.WINDOW_W, (int)App.WINDOW_H, (int)App.SIDEBAR_W, level, null, waves);
     }
 
     /** Deselect the item being carried */
     public void deselect() {
-        myTower = null;
-        selectedTower = null;
+        if (recorder != null) {
+            recorder.record(ticks, InputLog.Kind.DESELECT);
+        }
+        clearSelection();
     }
 
     /**
@@ -190,72 +280,155 @@ public class World {
      * @param delta ms from last tick
      */
     public void tick(int delta) throws SlickException {
+        ticks++;
         timer += delta;
+        clock += delta;
 
-        // Enemy spawning (based on the current wave)
+        // Enemy spawning (based on the current wave), only on the ticks the event wheel says a spawn is due
+        events.advance(clock, onEvent);
         if (waveNum > 0 && waveNum - 1 < waves.size()) {
             Wave w = waves.get(waveNum - 1);
-            // TODO: Make this return an array to spawn multiple enemies in the same tick
-            Enemy.Type enemyType = w.trySpawn(timer);
-            if (enemyType != null) {
-                spawnEnemy(startX, startY, enemyType);
-                // Play enemy sounds
-                if (enemyType.toString().toLowerCase().equals("python") ||
-                    enemyType.toString().toLowerCase().equals("commerce")) {
-                    AudioController.play(enemyType.toString().toLowerCase(), false);
+            if (spawnDue) {
+                spawnDue = false;
+                // Spawn everything that's due, however many that is
+                Wave.SpawnInstruction si;
+                while ((si = w.poll(timer)) != null) {
+                    Enemy.Type enemyType = si.enemy;
+                    spawnEnemy(startX[si.spawnPoint], startY[si.spawnPoint], enemyType);
+                    // Play enemy sounds
+                    if (enemyType.toString().toLowerCase().equals("python") ||
+                        enemyType.toString().toLowerCase().equals("commerce")) {
+                        play(enemyType.toString().toLowerCase(), false);
+                    }
                 }
+                scheduleSpawn(w);
             }
 
             // Set wave status
             waveComplete = w.isFinished() && enemies.isEmpty();
         }
 
-        // Tower counting down / shooting
-        for (Tower t : towers) {
-            t.update(delta);
+        // Tower shooting, for the towers off cooldown with an enemy nearby. Aiming only reads the enemies,
+        // so it can be split up; firing adds projectiles and plays sounds, so it's done afterwards in tower order
+        enemyGrid.rebuild(enemies);
+        int due = towerSchedule.update(clock);
+        forEach(due, TOWERS_PER_TASK, aimTowers);
+        for (int i = 0; i < due; i++) {
+            int index = towerSchedule.getDue(i);
+            Tower t = towers.get(index);
+            if (t.fire()) {
+                towerSchedule.shot(index, clock + t.getFireRate());
+            }
         }
     }
 
+    /**
+     * Run one tick of the game logic, without any player input.
+     * Used to simulate a headless world.
+     * @param delta ms from last tick
+     */
+    public void step(int delta) throws SlickException {
+        tick(delta);
+        processEnemies();
+        processProjectiles();
+    }
+
     /** Update enemy positons. */
     public void processEnemies() {
-        Iterator<Enemy> itr = enemies.iterator();
-        while (itr.hasNext()) {
-            Enemy e = itr.next();
-            // Hitting alistair
-            e.advance(e.getSpeed(), this);
-            if (e.checkCollision(alistair)) {
-                takeDamage(e.getDamage());
-                itr.remove();
+        // Each enemy only moves itself, so this can be split up
+        forEach(enemies.size(), ENEMIES_PER_TASK, advanceEnemies);
+        // Enemies rarely overtake each other, so this is usually a single pass
+        enemies.sortByProgress();
+
+        // Hitting alistair (only the leaders can be close enough)
+        float alistairX = alistair.getX(), alistairY = alistair.getY();
+        int alistairHalfW = alistair.getWidth() / 2, alistairHalfH = alistair.getHeight() / 2;
+        for (int i = 0; i < enemies.size(); i++) {
+            if (enemies.getDistanceRemaining(i) > alistairReach) {
+                break;
+            }
+            if (enemies.touches(i, alistairX, alistairY, alistairHalfW, alistairHalfH)) {
+                takeDamage(enemies.getHealth(i));
+                leaks++;
+                enemies.removeLater(i);
             }
         }
+        enemies.compact();
     }
 
     /** Update projectile positions. */
     void processProjectiles() {
-        Iterator<Projectile> itr = projectiles.iterator();
-        while (itr.hasNext()) {
-            Projectile p = itr.next();
-            p.advance();
-            if (p.isDead()) {
-                itr.remove();
+        // Enemies don't move while projectiles are processed, so bucket them once up front
+        enemyGrid.rebuild(enemies);
+        // Moving doesn't depend on the enemies, so every projectile moves before any of them hit
+        projectiles.advance(0, projectiles.size());
+
+        for (int i = 0; i < projectiles.size(); i++) {
+            if (projectiles.isDead(i, w, h)) {
+                projectiles.removeLater(i);
                 continue;
             }
 
-            // Hitting enemies
-            Iterator<Enemy> eItr = enemies.iterator();
-            while (eItr.hasNext()) {
-                Enemy e = eItr.next();
-                if (p.checkCollision(e)) {
-                    e.takeDamage(p.getDamage());
-                    if (e.isDead()) {
-                        eItr.remove();
-                        money++;
-                    }
-                    p.pop();
-                    itr.remove();
-                    break;
+            // Hitting enemies (only the ones on nearby tiles are checked)
+            int hit = enemyGrid.firstCollision(projectiles.getX(i), projectiles.getY(i),
+                    projectiles.getHalfWidth(i), projectiles.getHalfHeight(i));
+            if (hit >= 0) {
+                enemies.takeDamage(hit, projectiles.getDamage(i));
+                if (enemies.isDead(hit)) {
+                    enemies.removeLater(hit);
+                    enemyGrid.remove(hit);
+                    money++;
                 }
+                play(projectiles.getKind(i).getPopSound());
+                projectiles.removeLater(i);
+            }
+        }
+        projectiles.compact();
+        enemies.compact();
+    }
+
+    /** Work done over a range of indices, taken as a whole so the loop can live next to the data it reads. */
+    private interface Body {
+        /**
+         * @param from First index
+         * @param to Index just past the last one
+         */
+        void run(int from, int to);
+    }
+
+    /**
+     * Run a body over [0, size), split across the pool if there is one and the range is big enough.
+     * The body must only change state belonging to the indices it's given.
+     */
+    private void forEach(int size, int grain, Body body) {
+        if (pool == null || size <= grain) {
+            body.run(0, size);
+        } else {
+            pool.invoke(new Slice(body, 0, size, grain));
+        }
+    }
+
+    /** Runs a body over a range of indices, splitting it in half until it's small enough to run directly. */
+    private static class Slice extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Body body;
+        private final int from, to, grain;
+
+        Slice(Body body, int from, int to, int grain) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                body.run(from, to);
+                return;
             }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Slice(body, from, mid, grain), new Slice(body, mid, to, grain));
         }
     }
 
@@ -275,34 +448,17 @@ public class World {
                     return;
                 }
             } else {
-                // Also set color to red if touching a non-wall tile or tower, or if the player has insufficent funds
-                if (!getTile(mouseX, mouseY).holdsDefence || money < myTower.getType().getCost()) {
+                // Also set color to red if the tile can't be built on, or if the player has insufficent funds
+                if (!canPlace(myTower.getType(), toGrid(mouseX), toGrid(mouseY))) {
                     myTower.setColor(Color.red);
                     return;
                 }
-
-                for (Tower t : towers) {
-                    if (t.checkCollision(myTower)) {
-                        myTower.setColor(Color.red);
-                        return;
-                    }
-                }
             }
 
             // If the user clicked and it's not colliding with anything, place it
             if (clicked/* && myTower.getColor() == Color.white*/) {
-                myTower.place(toPos(toGrid(mouseX)), toPos(toGrid(mouseY)));
-                towers.add(myTower);
-                money -= myTower.getType().getCost();
-
-                // Play a sound effect
-                String towerName = myTower.getType().toString().toLowerCase();
-                if (towerName == "Heap Sort Alistair" || towerName == "Insertion Sort Alistair"
-                || towerName == "Quick Sort Alistair" || towerName == "Merge Sort Alistair") {
-                    AudioController.play(towerName, false);
-                }
-
-                deselect();
+                addTower(myTower, toGrid(mouseX), toGrid(mouseY));
+                clearSelection();
             }
         } else if (clicked) {
             // Click on a tower to display its range
@@ -330,9 +486,114 @@ public class World {
         }
     }
 
+    /**
+     * Buy and place a tower without going through the mouse, e.g. for a headless simulation.
+     * @param type Tower type
+     * @param gridX Grid x-position
+     * @param gridY Grid y-position
+     * @return True if the tower was placed, false if it can't go there or can't be afforded
+     */
+    public boolean placeTower(Tower.Type type, int gridX, int gridY) throws SlickException {
+        if (!inGridBounds(gridX, gridY)) {
+            return false;
+        }
+        if (!canPlace(type, gridX, gridY)) {
+            return false;
+        }
+        addTower(Tower.create(type, toPos(gridX), toPos(gridY), this), gridX, gridY);
+        return true;
+    }
+
+    /**
+     * Start the next wave, as if the next wave button was clicked.
+     * @return True if the wave started, false if the current one is still going
+     */
+    public boolean startNextWave() {
+        if (!waveComplete || gameOver) {
+            return false;
+        }
+        newWave();
+        return true;
+    }
+
+    /**
+     * Carry out a recorded input.
+     * Inputs were checked when they were recorded, so placements skip the usual checks.
+     */
+    void apply(InputLog.Event e) throws SlickException {
+        switch (e.kind) {
+            case PLACE_TOWER:
+                addTower(Tower.create(e.tower, toPos(e.x), toPos(e.y), this), e.x, e.y);
+                break;
+            case NEXT_WAVE:
+                newWave();
+                break;
+            case DESELECT:
+                clearSelection();
+                break;
+            case END:
+                break;
+        }
+    }
+
+    /**
+     * Split enemy movement and tower aiming across a fork-join pool.
+     * Everything else (spawning, firing, damage, money, sounds) stays on the calling thread in the usual order,
+     * so a game plays out exactly the same with or without a pool.
+     * @param pool Pool to use, or null to run everything on the calling thread
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Start recording player inputs for a replay.
+     * @param log Log to add inputs to
+     */
+    public void setRecorder(InputLog log) {
+        recorder = log;
+    }
+
+    /** Record the end of the game, so a replay knows when to stop and what state it should end in. */
+    public void endRecording() {
+        if (recorder != null) {
+            recorder.recordEnd(ticks, checksum());
+            recorder = null;
+        }
+    }
+
+    /**
+     * Hash the state of the game logic, for checking that replays match.
+     * Covers the counters plus every enemy, projectile and tower position.
+     */
+    public long checksum() {
+        long hash = ticks;
+        hash = hash * 31 + waveNum;
+        hash = hash * 31 + money;
+        hash = hash * 31 + health;
+        hash = hash * 31 + leaks;
+        for (int i = 0; i < enemies.size(); i++) {
+            hash = hash * 31 + Float.floatToIntBits(enemies.getX(i));
+            hash = hash * 31 + Float.floatToIntBits(enemies.getY(i));
+            hash = hash * 31 + enemies.getHealth(i);
+        }
+        for (int i = 0; i < projectiles.size(); i++) {
+            hash = hash * 31 + Float.floatToIntBits(projectiles.getX(i));
+            hash = hash * 31 + Float.floatToIntBits(projectiles.getY(i));
+        }
+        for (Tower t : towers) {
+            hash = hash * 31 + Float.floatToIntBits(t.getX());
+            hash = hash * 31 + Float.floatToIntBits(t.getY());
+        }
+        return hash;
+    }
+
     /** Button updates and colour changes. */
     public void processButtons(int mousex, int mousey, boolean clicked) {
         for (Button b: buttons) {
+            // Taken before anything changes, so the cached sidebar is redrawn when either does
+            boolean wasDisabled = b.getDisabled(), wasHovered = b.getHover();
+
             // Button disabling
 
             // New wave button disabling
@@ -354,9 +615,15 @@ public class World {
             } else {
                 b.setHover(false);
             }
+            if (b.getDisabled() != wasDisabled || b.getHover() != wasHovered) {
+                hudDirty = true;
+            }
         }
 
         for (TextSprite textSprite: sidebarIcons) {
+            if (textSprite.isHovered() != textSprite.contains(mousex, mousey)) {
+                hudDirty = true;
+            }
             if (textSprite.contains(mousex, mousey)) {
                 textSprite.setHovered(true);
             } else {
@@ -365,32 +632,129 @@ public class World {
         }
     }
 
-    /** Render the game world. */
-    public void render(Graphics g) {
-        // Tiles
+    /**
+     * Copy everything drawn from the simulation into a snapshot, so it can be drawn while the next tick runs.
+     * @param s Snapshot to fill
+     * @param time System.nanoTime() of the tick being copied
+     */
+    void publish(Snapshot s, long time) {
+        s.clear();
+        for (int i = 0; i < enemies.size(); i++) {
+            s.add(enemies, i);
+        }
+        s.endLayer(Snapshot.Layer.ENEMIES);
+        for (int i = 0; i < towers.size(); i++) {
+            s.add(towers.get(i));
+        }
+        s.endLayer(Snapshot.Layer.TOWERS);
+        for (int i = 0; i < projectiles.size(); i++) {
+            s.add(projectiles, i);
+        }
+        s.endLayer(Snapshot.Layer.PROJECTILES);
+        s.setStatus(ticks, time, waveNum, money, health, gameOver);
+    }
+
+    /**
+     * Render the game world. Only reads the snapshot and interface state, so it's safe while a tick is running.
+     * @param s Latest snapshot of the simulation
+     * @param alpha How far to draw moving sprites from where they were on the tick before the snapshot (0) to where
+     *              they are in it (1)
+     */
+    public void render(Graphics g, Snapshot s, float alpha) {
+        // Layers go in this order, and each one is batched by texture
         renderTiles(g);
+        renderLayer(s, Snapshot.Layer.ENEMIES, alpha);
+        renderLayer(s, Snapshot.Layer.TOWERS, alpha);
+        renderLayer(s, Snapshot.Layer.PROJECTILES, alpha);
+
+        // GUI elements
+        drawGUI(g, s);
+    }
+        
+    /** Draw game interface. */
+    public void drawGUI(Graphics g, Snapshot s){
+        float scale = App.SCALE_FACTOR;
 
-        // Enemies
-        for (Enemy e : enemies) {
-            e.drawSelf();
+        // Sidebar (only redrawn when something on it changes)
+        if (hudDirty || s.getWaveNum() != hudWave || s.getMoney() != hudMoney) {
+            bakeHud(g, s);
+        }
+        if (hudCache != null) {
+            hudCache.draw(w * scale - sidebarW * scale, 0);
+        } else {
+            drawSidebar(g, s);
         }
 
-        // Towers
-        for (Tower t : towers) {
-            t.drawSelf();
+        // Alistair's health
+        if (s.getHealth() != hudHealth) {
+            hudHealth = s.getHealth();
+            healthText = Integer.toString(hudHealth);
         }
+        g.setColor(Color.white);
+        g.setFont(Fonts.MEDIUM_TTF);
+        Util.writeCentered(g, healthText, alistair.getX(), alistair.getY());
 
-        // Projectiles
-        for (Projectile p : projectiles) {
-            p.drawSelf();
+        // Tower being placed
+        Tower held = myTower, selected = selectedTower;
+        if (held != null) {
+            drawBuildable(g);
+            held.drawSelf();
+            held.drawRange(g);
         }
 
-        // GUI elements
-        drawGUI(g);
+        // Selected tower draws its range
+        if (selected != null) {
+            selected.drawRange(g);
+        }
+
+        // Game over splash
+        if (s.isGameOver()) {
+            g.setColor(Color.red);
+            Util.writeCentered(Fonts.LARGE_TTF, "Game Over!", App.WINDOW_W / 2, App.WINDOW_H / 2);
+            g.setColor(Color.white);
+        }
     }
-        
-    /** Draw game interface. */
-    public void drawGUI(Graphics g){
+
+    /** Shade every tile a tower could be placed on. */
+    private void drawBuildable(Graphics g) {
+        g.setColor(BUILDABLE_SHADE);
+        int gridH = level.getHeight();
+        for (int cell = buildable.nextSetBit(0); cell >= 0; cell = buildable.nextSetBit(cell + 1)) {
+            g.fillRect(cell / gridH * tileSize, cell % gridH * tileSize, tileSize, tileSize);
+        }
+    }
+
+    /**
+     * Draw the sidebar into hudCache, falling back to drawing it every frame if offscreen buffers aren't supported.
+     * @param g The screen's graphics context, made current again afterwards
+     * @param s Snapshot to take the wave number and money from
+     */
+    private void bakeHud(Graphics g, Snapshot s) {
+        hudDirty = false;
+        hudWave = s.getWaveNum();
+        hudMoney = s.getMoney();
+        float scale = App.SCALE_FACTOR;
+        try {
+            if (hudCache == null) {
+                hudCache = new Image((int) (sidebarW * scale), (int) (h * scale));
+            }
+            Graphics cacheGraphics = hudCache.getGraphics();
+            cacheGraphics.clear();
+            Graphics.setCurrent(cacheGraphics);
+            // Draw in screen coordinates, shifted so the sidebar starts at the left of the image
+            cacheGraphics.translate(sidebarW * scale - w * scale, 0);
+            drawSidebar(cacheGraphics, s);
+            cacheGraphics.resetTransform();
+            cacheGraphics.flush();
+        } catch (SlickException e) {
+            System.err.println("Offscreen buffers aren't supported, so the sidebar will be drawn every frame: " + e.getMessage());
+            hudCache = null;
+        }
+        Graphics.setCurrent(g);
+    }
+
+    /** Draw the sidebar background, tower icons, buttons and counters. */
+    private void drawSidebar(Graphics g, Snapshot snapshot) {
         float scale = App.SCALE_FACTOR;
 
         // Sidebar
@@ -404,69 +768,107 @@ public class World {
             s.drawSelf();
         }
 
-        // Tower being placed
-        if (myTower != null) {
-            myTower.drawSelf();
-            myTower.drawRange(g);
-        }
-
-        // Selected tower draws its range
-        if (selectedTower != null) {
-            selectedTower.drawRange(g);
-        }
-
         // Buttons
         g.setColor(Color.white);
         for (Button b : buttons) {
             b.drawSelf(g);
         }
 
-        // Display wave number and Alistair's health
+        // Display wave number and money
         g.setColor(Color.white);
-        g.setFont(SMALL_TTF);
-        Util.writeCentered(g, "Wave: " + waveNum, (w - (sidebarW / 2)) * scale, 20);
-        Util.writeCentered(g, "Money: " + money, (w - (sidebarW / 2)) * scale, 40);
-        g.setFont(MEDIUM_TTF);
-        Util.writeCentered(g, Integer.toString(health), alistair.getX(), alistair.getY());
+        g.setFont(Fonts.SMALL_TTF);
+        Util.writeCentered(g, "Wave: " + snapshot.getWaveNum(), (w - (sidebarW / 2)) * scale, 20);
+        Util.writeCentered(g, "Money: " + snapshot.getMoney(), (w - (sidebarW / 2)) * scale, 40);
+    }
 
-        // Tower being placed
-        if (myTower != null) {
-            myTower.drawSelf();
-            myTower.drawRange(g);
+    public void renderTiles(Graphics g) {
+        if (mapDirty) {
+            bakeMap(g);
         }
-
-        if (selectedTower != null) {
-            selectedTower.drawRange(g);
-        }
-
-        // Game over splash
-        if (gameOver) {
-            g.setColor(Color.red);
-            Util.writeCentered(LARGE_TTF, "Game Over!", App.WINDOW_W / 2, App.WINDOW_H / 2);
-            g.setColor(Color.white);
+        if (mapCache != null) {
+            mapCache.draw(0, 0);
+        } else {
+            map.render(0, 0);
         }
     }
 
-    public void renderTiles(Graphics g) {
-        map.render(0, 0);
+    /**
+     * Draw every layer of the map into mapCache, so each frame only has to draw one image.
+     * Uses an FBO (or a pbuffer), falling back to drawing the map every frame if neither is supported.
+     * @param g The screen's graphics context, made current again afterwards
+     */
+    private void bakeMap(Graphics g) {
+        mapDirty = false;
+        try {
+            if (mapCache == null) {
+                mapCache = new Image(map.getWidth() * map.getTileWidth(), map.getHeight() * map.getTileHeight());
+            }
+            Graphics cacheGraphics = mapCache.getGraphics();
+            cacheGraphics.clear();
+            Graphics.setCurrent(cacheGraphics);
+            map.render(0, 0);
+            cacheGraphics.flush();
+        } catch (SlickException e) {
+            System.err.println("Offscreen buffers aren't supported, so the map will be drawn every frame: " + e.getMessage());
+            mapCache = null;
+        }
+        Graphics.setCurrent(g);
     }
 
-    public void renderEnemies() {
-        for (Enemy e : enemies) {
-            e.drawSelf();
+    /**
+     * Change a tile on the map. The cached map is redrawn before the next frame.
+     * Changing the first layer (the one whose tile properties the game reads) also updates whether the tile is a wall
+     * or holds defences, and repairs the enemies' path around it. Like any other change to the world, call it between
+     * ticks. Blocking a tile can cut enemies off from Alistair; that's up to the caller to avoid.
+     * @param x Grid x-position
+     * @param y Grid y-position
+     * @param layer Map layer
+     * @param tileId Global id of the new tile
+     * @throws IllegalArgumentException If the tile or layer isn't on the map
+     */
+    public void setTileId(int x, int y, int layer, int tileId) {
+        if (!inGridBounds(x, y)) {
+            throw new IllegalArgumentException("No tile at " + x + ", " + y + " on a "
+                    + level.getWidth() + "x" + level.getHeight() + " map");
+        }
+        if (layer < 0 || (!isHeadless() && layer >= map.getLayerCount())) {
+            throw new IllegalArgumentException("No map layer " + layer);
+        }
+        if (!isHeadless()) {
+            map.setTileId(x, y, layer, tileId);
+            mapDirty = true;
+        }
+        if (layer != 0) {
+            return;
         }
+
+        level.setTileId(x, y, tileId);
+        int cell = x * level.getHeight() + y;
+        byte flags = readTileFlags(x, y, level.getTileProperties(x, y));
+        tileFlags[cell] = flags;
+        buildable.set(cell, (flags & HOLDS_DEFENCE) != 0 && !isNearTower(x, y));
+        path.setOpen(x, y, (flags & IS_WALL) == 0);
     }
 
-    public void renderTowers(Graphics g) {
+    /** Check whether a tower stops one being placed on a grid position (the tiles markBuilt rules out). */
+    private boolean isNearTower(int gridX, int gridY) {
         for (Tower t : towers) {
-            t.drawSelf();
+            int reachX = 2 * (t.getWidth() / 2) / tileSize, reachY = 2 * (t.getHeight() / 2) / tileSize;
+            if (Math.abs(toGrid(t.getX()) - gridX) <= reachX && Math.abs(toGrid(t.getY()) - gridY) <= reachY) {
+                return true;
+            }
         }
+        return false;
     }
 
-    public void renderProjectiles() {
-        for (Projectile p : projectiles) {
-            p.drawSelf();
+    /** Draw one layer of a snapshot, with each sprite stepped back from its latest position by the rest of a tick. */
+    private void renderLayer(Snapshot s, Snapshot.Layer layer, float alpha) {
+        float back = 1 - alpha;
+        for (int i = s.getStart(layer); i < s.getEnd(layer); i++) {
+            batch.add(s.getImage(i), s.getLeft(i) - s.getVX(i) * back, s.getTop(i) - s.getVY(i) * back,
+                    s.getWidth(i), s.getHeight(i));
         }
+        batch.flush();
     }
 
     /**
@@ -484,14 +886,34 @@ public class World {
 
     /** Create the end game splash */
     public void endGame() {
-        deselect();
-        AudioController.play("gameover");
+        clearSelection();
+        play("gameover");
         gameOver = true;
     }
 
-    /** Get the tile data at a specific position. */
-    public Tile getTile(float x, float y) {
-        return tiles[toGrid(x)][toGrid(y)];
+    /**
+     * Get the flags of the tile at a specific position, packed into an int so asking doesn't allocate.
+     * @return IS_WALL and HOLDS_DEFENCE or'ed together
+     */
+    public int getTileFlags(float x, float y) {
+        return tileFlags[toGrid(x) * level.getHeight() + toGrid(y)];
+    }
+
+    /** Work out a tile's flags from its properties in the map. */
+    private static byte readTileFlags(int gridX, int gridY, Properties properties) {
+        if (properties == null) {
+            System.err.println("Could not parse the properties of the tile at " + gridX + " " + gridY + "" +
+                               "assumed a wall that cannot hold a defence.");
+            return IS_WALL;
+        }
+        byte flags = 0;
+        if (Boolean.parseBoolean(properties.getProperty("isWall"))) {
+            flags |= IS_WALL;
+        }
+        if (Boolean.parseBoolean(properties.getProperty("holdsDefence"))) {
+            flags |= HOLDS_DEFENCE;
+        }
+        return flags;
     }
 
     /** Convert from literal position to position on grid. */
@@ -507,42 +929,83 @@ public class World {
 
     /** Check grid coordinates against game boundaries. */
     public boolean inGridBounds(int x, int y) {
-        return x >= 0 && y >= 0 && x < map.getWidth() && y < map.getHeight();
+        return x >= 0 && y >= 0 && x < level.getWidth() && y < level.getHeight();
     }
 
     /** Check literal coordinates against game boundaries. */
     public boolean inGridBounds(float x, float y) {
-        return x >= 0 && y >= 0 && x < map.getWidth() * tileSize && y < map.getHeight() * tileSize;
+        return x >= 0 && y >= 0 && x < level.getWidth() * tileSize && y < level.getHeight() * tileSize;
     }
 
     /** Calculate a horizontal grid direction to point inwards from the current position. */
     public int inwardDirX(int gridX) {
-        return gridX < 0 ? 1 : (gridX >= map.getWidth() ? -1 : 0);
+        return gridX < 0 ? 1 : (gridX >= level.getWidth() ? -1 : 0);
     }
 
     /** Calculate a horizontal literal direction to point inwards. */
     public float inwardDirX(float posX) {
-        return posX < 0 ? 1 : (posX >= map.getWidth() * tileSize ? -1 : 0);
+        return posX < 0 ? 1 : (posX >= level.getWidth() * tileSize ? -1 : 0);
     }
 
     /** Calculate a vertical grid direction to point inwards from the current position. */
     public int inwardDirY(int gridY) {
-        return gridY < 0 ? 1 : (gridY >= map.getHeight() ? -1 : 0);
+        return gridY < 0 ? 1 : (gridY >= level.getHeight() ? -1 : 0);
     }
 
     /** Calculate a vertical literal direction to point inwards. */
     public float inwardDirY(float posY) {
-        return posY < 0 ? 1 : (posY >= map.getHeight() * tileSize ? -1 : 0);
+        return posY < 0 ? 1 : (posY >= level.getHeight() * tileSize ? -1 : 0);
     }
 
-    /** Add a projectile to the list of monitored projectiles. */
-    public void addProjectile(Projectile proj) {
-        projectiles.add(proj);
+    /**
+     * Find the enemy a tower should target.
+     * @param x Tower x-position
+     * @param y Tower y-position
+     * @param range Tower range
+     * @param policy Decides between the enemies in range
+     * @return Slot of the chosen enemy, or -1 if none are in range
+     */
+    public int findTarget(float x, float y, float range, SpatialHash.Scorer policy) {
+        if (policy == Tower.Targeting.FIRST) {
+            return findLeader(x, y, range);
+        }
+        return enemyGrid.best(x, y, range, policy);
+    }
+
+    /** Find the enemy furthest along the path within range. Enemies are kept in path order, so this stops at the first hit. */
+    private int findLeader(float x, float y, float range) {
+        float rangeSq = range * range;
+        for (int i = 0; i < enemies.size(); i++) {
+            float dx = enemies.getX(i) - x, dy = enemies.getY(i) - y;
+            if (dx * dx + dy * dy <= rangeSq) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Fire a projectile.
+     * @param kind Kind of projectile
+     * @param x Starting x-position
+     * @param y Starting y-position
+     * @param vx x-velocity
+     * @param vy y-velocity
+     */
+    public void addProjectile(Projectile.Kind kind, float x, float y, float vx, float vy) {
+        projectiles.add(kind, x, y, vx, vy);
     }
 
     /** Forward a play command to the audio controller */
     public void play(String event) {
-        AudioController.play(event);
+        play(event, true);
+    }
+
+    /** Forward a play command to the audio controller (headless worlds stay silent). */
+    private void play(String event, boolean allowRepeat) {
+        if (!isHeadless()) {
+            AudioController.play(event, allowRepeat);
+        }
     }
 
     /**
@@ -550,16 +1013,75 @@ public class World {
      * Called every time a new wave starts.
      */
     private void newWave() {
+        if (recorder != null) {
+            recorder.record(ticks, InputLog.Kind.NEXT_WAVE);
+        }
         waveNum++;
         timer = 0;
-        for (Tower t : towers) {
-            t.waveReset();
+        waveStart = clock;
+        events.clear();
+        spawnDue = false;
+        if (waveNum - 1 < waves.size()) {
+            scheduleSpawn(waves.get(waveNum - 1));
+        }
+        // Every tower starts the wave ready to shoot
+        towerSchedule.parkAll();
+    }
+
+    /** Wake tick up when a wave's next spawn is due (if it has any left). */
+    private void scheduleSpawn(Wave wave) {
+        long next = wave.nextSpawnTime();
+        if (next >= 0) {
+            events.schedule(SPAWN_DUE, waveStart + next);
+        }
+    }
+
+    /** Create a new enemy at the given position (also used by Benchmark to fill the map). */
+    void spawnEnemy(float x, float y, Enemy.Type type) {
+        enemies.add(x, y, inwardDirX(x), inwardDirY(y), type);
+    }
+
+    /** Check whether a tower can be bought and placed on a grid position (which must be in bounds). */
+    private boolean canPlace(Tower.Type type, int gridX, int gridY) {
+        return money >= type.getCost() && buildable.get(gridX * level.getHeight() + gridY);
+    }
+
+    /** Pay for a tower and place it on a grid position. */
+    private void addTower(Tower tower, int gridX, int gridY) {
+        if (recorder != null) {
+            recorder.recordPlacement(ticks, tower.getType(), gridX, gridY);
+        }
+        tower.place(toPos(gridX), toPos(gridY));
+        towers.add(tower);
+        markBuilt(gridX, gridY, tower.getWidth(), tower.getHeight());
+        towerSchedule.add(towers.size() - 1, tower.getX(), tower.getY(), tower.getRange());
+        money -= tower.getType().getCost();
+
+        // Play a sound effect
+        String towerName = tower.getType().toString().toLowerCase();
+        if (towerName == "Heap Sort Alistair" || towerName == "Insertion Sort Alistair"
+        || towerName == "Quick Sort Alistair" || towerName == "Merge Sort Alistair") {
+            play(towerName, false);
         }
     }
 
-    /** Create a new enemy at the given position. */
-    private void spawnEnemy(float x, float y, Enemy.Type type) throws SlickException {
-        enemies.add(new Enemy(x, y, new Vector2f(inwardDirX(x), inwardDirY(y)), type));
+    /**
+     * Stop towers being placed where they would touch a new tower.
+     * Towers are all the same size, and their collision boxes touch (see Entity.checkCollision) when they're at most
+     * one tower width apart, so a tower wider than a tile rules out its neighbours too.
+     */
+    private void markBuilt(int gridX, int gridY, int towerW, int towerH) {
+        int reachX = 2 * (towerW / 2) / tileSize, reachY = 2 * (towerH / 2) / tileSize;
+        for (int x = Math.max(0, gridX - reachX); x <= Math.min(level.getWidth() - 1, gridX + reachX); x++) {
+            buildable.clear(x * level.getHeight() + Math.max(0, gridY - reachY),
+                    x * level.getHeight() + Math.min(level.getHeight() - 1, gridY + reachY) + 1);
+        }
+    }
+
+    /** Drop the held tower and hide the selected tower's range. */
+    private void clearSelection() {
+        myTower = null;
+        selectedTower = null;
     }
 
     /** Check if a tower is currently being held. */
@@ -568,40 +1090,43 @@ public class World {
         return myTower != null;
     }
 
+    public boolean isHeadless() { return map == null; }
+    public boolean isGameOver() { return gameOver; }
+    public boolean isWaveComplete() { return waveComplete; }
+    public boolean hasNextWave() { return waveNum < waves.size(); }
+    public int getWaveNum() { return waveNum; }
+    public int getMoney() { return money; }
+    public int getHealth() { return health; }
+    public int getLeaks() { return leaks; }
+    public long getTicks() { return ticks; }
+    /** Set the player's money (used by Benchmark to buy any number of towers). */
+    void setMoney(int money) { this.money = money; }
     public int getWidth() { return w; }
     public int getHeight() { return h; }
-    public int getGridWidth() { return map.getWidth(); }
-    public int getGridHeight() { return map.getHeight(); }
+    public int getGridWidth() { return level.getWidth(); }
+    public int getGridHeight() { return level.getHeight(); }
     public int getTileSize() { return tileSize; }
-    public int getPathXDir(int x, int y) { return path[x][y][0]; }
-    public int getPathYDir(int x, int y) { return path[x][y][1]; }
-    public List<Enemy> getEnemies() { return Collections.unmodifiableList(enemies); }
-    public List<Projectile> getProjectiles() { return Collections.unmodifiableList(projectiles); }
+    public SpriteRegistry getSprites() { return sprites; }
+    public FlowField getPath() { return path; }
+    public EnemyStore getEnemies() { return enemies; }
+    public ProjectileStore getProjectiles() { return projectiles; }
+    public List<Tower> getTowers() { return towerView; }
 
-    /** A data container for each tile on the map. */
+    /** A view of one tile on the map, for when a tile's box is needed (e.g. Alistair's). The data is kept in World. */
     public class Tile extends StaticEntity {
-        private boolean isWall, holdsDefence;
+        private final byte flags;
 
-        private Tile(int gridX, int gridY, Properties properties) {
+        private Tile(int gridX, int gridY) {
             super(toPos(gridX), toPos(gridY), tileSize, tileSize);
-            try {
-                isWall = Boolean.parseBoolean(properties.getProperty("isWall"));
-                holdsDefence = Boolean.parseBoolean(properties.getProperty("holdsDefence"));
-            } catch (NullPointerException e) {
-                e.printStackTrace();
-                System.err.println("Could not parse the properties of the tile at " + gridX + " " + gridY + "" +
-                                   "assumed a wall that cannot hold a defence.");
-                isWall = true;
-                holdsDefence = false;
-            }
+            flags = tileFlags[gridX * level.getHeight() + gridY];
         }
 
         @Override
         public String toString() {
-            return "Tile(" + toGrid(getX()) + ", " + toGrid(getY()) + "): {isWall: " + isWall + "}";
+            return "Tile(" + toGrid(getX()) + ", " + toGrid(getY()) + "): {isWall: " + isWall() + "}";
         }
 
-        public boolean isWall() { return isWall; }
-        public boolean holdsDefence() { return holdsDefence; }
+        public boolean isWall() { return (flags & IS_WALL) != 0; }
+        public boolean holdsDefence() { return (flags & HOLDS_DEFENCE) != 0; }
     }
 }
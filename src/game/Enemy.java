@@ -1,13 +1,7 @@
 package game;
 
-import org.newdawn.slick.Image;
-import org.newdawn.slick.SlickException;
-import org.newdawn.slick.geom.Vector2f;
-
-import control.World;
-
-/** Sprite that moves down the path and does damage to Alistair. */
-public class Enemy extends DynamicSprite {
+/** Kinds of sprite that move down the path and do damage to Alistair. The enemies themselves live in EnemyStore. */
+public final class Enemy {
     public enum Type {
         // In order of increasing strength
         PYTHON("python-icon.png", 1, 3.2F),
@@ -24,72 +18,13 @@ public class Enemy extends DynamicSprite {
             this.health = health;
             this.speed = speed;
         }
-    }
-    public static final String SPRITE_PATH = "assets/sprites/enemies/";
-    
-    private Type type;
-    private int health;
-    private float speed;
 
-    /**
-     * Create an enemy
-     * @param startx x-position of start
-     * @param starty y-position of start
-     * @param v Initial movement vector  (unscaled)
-     * @param type Enemy type as an enum, e.g. Enemy.Type.PYTHON
-     */
-    public Enemy(float startx, float starty, Vector2f v, Type type) throws SlickException {
-        super(startx, starty, v, new Image(SPRITE_PATH + type.imPath), 0);
-        this.type = type;
-        health = type.health;
-        speed = type.speed;
-        setV(v.scale(speed));
-        setDamage(health);
-    }
-    
-    /** Moves enemy along the precalculated path.
-     * @param speed Magnitude of step
-     * @param world Game's world instance
-     * */
-    public void advance(float speed, World world) {
-        int nextX = world.toGrid(getX() + getWidth() * Math.signum(getV().x));
-        int nextY = world.toGrid(getY() + getHeight() * Math.signum(getV().y));
-        int gridX = world.toGrid(getX()), gridY = world.toGrid(getY());
-
-        // See if we are in the process of turning (our position, plus the entire width/height of the sprite is at the edge)
-        if (world.getTile(nextX, nextY).isWall()) {
-            // Optimally turn at the center of the tile (small buffer in case of lag/fast sprites)
-            int tileSize = world.getTileSize();
-            final int BUFFER = 5;
-            if (Math.floorMod((int)getX(), tileSize*gridX + tileSize/2) < BUFFER &&
-                Math.floorMod((int)getY(), tileSize*gridY + tileSize/2) < BUFFER) {
-                // Turn
-                if (world.inGridBounds(gridX, gridY)) {
-                    setV(speed * world.getPathXDir(gridX, gridY), speed * world.getPathYDir(gridX, gridY));
-                }
-            }
-        } else if (!world.inGridBounds(gridX, gridY)) {
-            // Head away from the edge of the map
-            setV(speed * world.inwardDirX(gridX), speed * world.inwardDirY(gridY));
-        }
-
-        super.advance();
+        /** Starting health, which is also the damage done to Alistair. */
+        public int getHealth() { return health; }
+        /** Pixels moved per tick. */
+        public float getSpeed() { return speed; }
     }
+    public static final String SPRITE_PATH = "assets/sprites/enemies/";
 
-    /**
-     * Make an enemy take damage.
-     * @param damage Amount to be deducted from health
-     */
-    public void takeDamage(int damage) {
-        health -= damage;
-        setDamage(health);
-    }
-    
-    @Override
-    public boolean isDead() {
-        return super.isDead() || health <= 0;
-    }
-    
-    public float getSpeed() { return speed; }
-    public Type getType() { return type; }
+    private Enemy() {} // prevents instantiation from outside the class
 }
@@ -0,0 +1,11 @@
+package game;
+
+import org.newdawn.slick.Image;
+
+/** Stand-in for an image when there is no OpenGL context. Only knows its size, so it must never be drawn. */
+class HeadlessImage extends Image {
+    HeadlessImage(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+}
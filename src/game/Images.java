@@ -0,0 +1,61 @@
+package game;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.newdawn.slick.Image;
+import org.newdawn.slick.SlickException;
+
+/**
+ * Loads sprite images (see SpriteRegistry).
+ * In headless mode only the image sizes are read (from the file headers), so no OpenGL context is needed.
+ */
+final class Images {
+    /** Size-only images are never drawn, so they can be shared between every world in the process. */
+    private static final Map<String, Image> HEADLESS_IMAGES = new ConcurrentHashMap<>();
+
+    private Images() {} // prevents instantiation from outside the class
+
+    /**
+     * Load an image.
+     * @param path Path to the image file
+     * @param headless True to skip creating a texture
+     * @return The image, or a stand-in that only has a size when headless
+     */
+    static Image load(String path, boolean headless) throws SlickException {
+        if (!headless) {
+            return new Image(path);
+        }
+        Image im = HEADLESS_IMAGES.get(path);
+        if (im == null) {
+            im = readSize(path);
+            HEADLESS_IMAGES.putIfAbsent(path, im);
+        }
+        return im;
+    }
+
+    private static Image readSize(String path) throws SlickException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new File(path))) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                throw new SlickException("Unable to read image size: " + path);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in);
+                return new HeadlessImage(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new SlickException("Unable to read image size: " + path, e);
+        }
+    }
+}
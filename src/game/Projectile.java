@@ -1,38 +1,37 @@
 package game;
 
-import org.newdawn.slick.Image;
-import org.newdawn.slick.geom.Vector2f;
+/** Kinds of item fired by a tower. The projectiles themselves live in ProjectileStore. */
+public final class Projectile {
+    /** The different projectiles, with their images and how they behave. */
+    public enum Kind {
+        /** Flies in a straight line until it hits an enemy or leaves the screen. */
+        BALL("defaultproj.png", 1, Sprite.SCALE, 0, 0, "lowpop"),
+        /** Sits still and grows until it hits an enemy or reaches its full size. */
+        BUBBLE("bubble-original.png", 1, .1f, 0.015f, 0.7f, "bubblepop");
+        final String imName;
+        private final int damage;
+        private final float scale, growth, maxScale;
+        private final String popSound;
+        Kind(String imName, int damage, float scale, float growth, float maxScale, String popSound) {
+            this.imName = imName;
+            this.damage = damage;
+            this.scale = scale;
+            this.growth = growth;
+            this.maxScale = maxScale;
+            this.popSound = popSound;
+        }
 
-import control.World;
-
-/** 
- * Moving item fired by a tower.
- */
-public abstract class Projectile extends DynamicSprite {
-    protected static final String SPRITE_PATH = "assets/sprites/projectiles/";
-    
-    public World world;
-    
-    /** Create a projectile.
-     * @param startX Starting x position
-     * @param startY Starting y position
-     * @param vec Velocity vector to begin moving with
-     * @param img Projectile image
-     * @param damage Damage it deals
-     */
-    public Projectile(World world, float startX, float startY, Vector2f vec, Image im, int damage) {
-        super(startX, startY, vec, im, damage);
-        this.world = world;
-    }
-    
-    @Override
-    public boolean isDead() {
-        return super.isDead() || isOffScreen(world.getWidth(), world.getHeight());
-    }
-
-    public void pop() {
-        world.play("lowpop");
+        public int getDamage() { return damage; }
+        /** Scale it's fired at. */
+        public float getScale() { return scale; }
+        /** Scale added every tick. */
+        public float getGrowth() { return growth; }
+        /** Scale at which it disappears, or 0 if it never does. */
+        public float getMaxScale() { return maxScale; }
+        /** Sound played when it hits an enemy. */
+        public String getPopSound() { return popSound; }
     }
+    static final String SPRITE_PATH = "assets/sprites/projectiles/";
 
-    public World getWorld() { return world; }
+    private Projectile() {} // prevents instantiation from outside the class
 }
@@ -1,35 +1,28 @@
 package game;
 
-import org.newdawn.slick.Image;
 import org.newdawn.slick.SlickException;
-import org.newdawn.slick.geom.Vector2f;
 
+import control.EnemyStore;
 import control.World;
 
 public class SelectionSortTower extends Tower {
+    /** Speed of the balls it fires. */
+    private static final float BALL_SPEED = 6f;
+
     public SelectionSortTower(float x, float y, Type type, World world) throws SlickException {
         super(x, y, type, world);
     }
 
     @Override
-    protected void shoot(Vector2f dir) throws SlickException {
+    protected void shoot(float dirX, float dirY) throws SlickException {
         // This assumes that the given dir is already scaled by speed
-        world.addProjectile(new Ball(world, getX(), getY(), dir));
+        world.addProjectile(Projectile.Kind.BALL, getX(), getY(), dirX, dirY);
     }
     
     @Override
-    protected Vector2f aimAt(Enemy target) {
+    protected void aimAt(EnemyStore enemies, int target) {
+        super.aimAt(enemies, target);
         // Assume the target keeps moving in a straight line (leading the shot)
-        return super.aimAt(target).scale(Ball.SPEED).add(target.getV());
-    }
-    
-    private static class Ball extends Projectile {
-        private static final int DAMAGE = 1;
-        private static final float SPEED = 6f;
-        
-        public Ball(World world, float startX, float startY, Vector2f vec) throws SlickException {
-            super(world, startX, startY, vec, new Image(Projectile.SPRITE_PATH + "defaultproj.png"), DAMAGE);
-        }
-        
+        setAim(getAimX() * BALL_SPEED + enemies.getVX(target), getAimY() * BALL_SPEED + enemies.getVY(target));
     }
 }
@@ -6,10 +6,12 @@ import org.newdawn.slick.Image;
 
 /** On-screen object with an image. */
 public class Sprite extends Entity {
+    /** Scales up all sprites from 32px reference to 48px. */
+    public static final float SCALE = 1.5f;
+
     private Image im;
     private Color col = Color.white;
-    // Scales up all sprites from 32px reference to 48px
-    private float scale = 1.5f;
+    private float scale = SCALE;
 
     /**
      * Create a sprite.
@@ -37,6 +39,7 @@ public class Sprite extends Entity {
         return getLeft() >= windowW || getRight() < 0 || getTop() >= windowH || getBottom() < 0;
     }
 
+    public Image getImage() { return im; }
     public Color getColor() { return col; }
     public float getScale() { return scale; }
 
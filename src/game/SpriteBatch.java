@@ -0,0 +1,62 @@
+package game;
+
+import java.util.Arrays;
+
+import org.newdawn.slick.Color;
+import org.newdawn.slick.Image;
+import org.newdawn.slick.opengl.Texture;
+
+/**
+ * Collects sprites for one layer and draws them grouped by texture.
+ * Each group binds its texture once and goes out as a single run of quads, instead of one bind and one quad per sprite.
+ * Groups are drawn in the order their first sprite was added, and sprites keep their order within a group.
+ * Sprites are drawn untinted, and image rotation and alpha aren't applied (no game sprite uses them).
+ */
+public class SpriteBatch {
+    private Image[] images = new Image[64];
+    private float[] rects = new float[64 * 4];
+    private int size = 0;
+
+    /**
+     * Queue an image to be drawn on the next flush.
+     * @param image Image to draw
+     * @param x Left edge
+     * @param y Top edge
+     * @param width Width to draw at
+     * @param height Height to draw at
+     */
+    public void add(Image image, float x, float y, float width, float height) {
+        if (size == images.length) {
+            images = Arrays.copyOf(images, size * 2);
+            rects = Arrays.copyOf(rects, size * 2 * 4);
+        }
+        images[size] = image;
+        rects[size * 4] = x;
+        rects[size * 4 + 1] = y;
+        rects[size * 4 + 2] = width;
+        rects[size * 4 + 3] = height;
+        size++;
+    }
+
+    /** Draw every queued image and empty the batch. */
+    public void flush() {
+        Color.white.bind();
+        // There are only a handful of textures, so one pass per texture beats sorting
+        for (int i = 0; i < size; i++) {
+            if (images[i] == null) {
+                continue;
+            }
+            Image sheet = images[i];
+            Texture texture = sheet.getTexture();
+            sheet.startUse();
+            for (int j = i; j < size; j++) {
+                if (images[j] != null && images[j].getTexture() == texture) {
+                    images[j].drawEmbedded(rects[j * 4], rects[j * 4 + 1], rects[j * 4 + 2], rects[j * 4 + 3]);
+                    images[j] = null;
+                }
+            }
+            sheet.endUse();
+        }
+        size = 0;
+    }
+}
@@ -0,0 +1,35 @@
+package game;
+
+import org.newdawn.slick.Image;
+import org.newdawn.slick.SlickException;
+
+/**
+ * Every sprite image a level needs, loaded up front when the level opens.
+ * Images are shared by all sprites of the same kind and looked up by enum ordinal,
+ * so spawning an entity does no file access, texture lookups or hashing.
+ */
+public final class SpriteRegistry {
+    private final Image[] enemies = new Image[Enemy.Type.values().length];
+    private final Image[] towers = new Image[Tower.Type.values().length];
+    private final Image[] projectiles = new Image[Projectile.Kind.values().length];
+
+    /**
+     * Load all the sprite images.
+     * @param headless True to only read image sizes (no OpenGL context needed)
+     */
+    public SpriteRegistry(boolean headless) throws SlickException {
+        for (Enemy.Type t : Enemy.Type.values()) {
+            enemies[t.ordinal()] = Images.load(Enemy.SPRITE_PATH + t.imPath, headless);
+        }
+        for (Tower.Type t : Tower.Type.values()) {
+            towers[t.ordinal()] = Images.load(Tower.SPRITE_PATH + t.imName, headless);
+        }
+        for (Projectile.Kind k : Projectile.Kind.values()) {
+            projectiles[k.ordinal()] = Images.load(Projectile.SPRITE_PATH + k.imName, headless);
+        }
+    }
+
+    public Image get(Enemy.Type type) { return enemies[type.ordinal()]; }
+    public Image get(Tower.Type type) { return towers[type.ordinal()]; }
+    public Image get(Projectile.Kind kind) { return projectiles[kind.ordinal()]; }
+}
@@ -1,13 +1,11 @@
 package game;
 
-import java.util.List;
-
 import org.newdawn.slick.Color;
-import org.newdawn.slick.Image;
 import org.newdawn.slick.SlickException;
 import org.newdawn.slick.Graphics;
-import org.newdawn.slick.geom.Vector2f;
 
+import control.EnemyStore;
+import control.SpatialHash;
 import control.World;
 
 /**
@@ -17,7 +15,8 @@ public abstract class Tower extends Sprite {
     public enum Type {
         SELECTION("Selection Sort Alistair", "selection.png", 2000, 350f, 50),
         BUBBLE("Bubble Sort Alistair", "bubble.png", 1500, 224f, 80) ;
-        private final String title, imName;
+        private final String title;
+        final String imName;
         private final int fireRate;
         private final float range;
         private final int cost;
@@ -32,9 +31,6 @@ public abstract class Tower extends Sprite {
             return title;
         }
         public int getCost() { return cost; }
-        public Image getImage() throws SlickException {
-            return new Image(SPRITE_PATH + imName);
-        }
         public static Type fromTitle(String title) {
             for (Type t : values()) {
                 if (t.title.equals(title)) {
@@ -44,14 +40,38 @@ public abstract class Tower extends Sprite {
             throw new IllegalArgumentException("No tower type for title '" + title + "'");
         }
     }
+    /** Ways of picking between the enemies in range. */
+    public enum Targeting implements SpatialHash.Scorer {
+        /** The enemy with the least distance left to Alistair (right even when enemies overtake or paths branch). */
+        FIRST {
+            public float score(EnemyStore e, int i, float distSq) { return -e.getDistanceRemaining(i); }
+        },
+        /** The enemy nearest the tower. */
+        CLOSEST {
+            public float score(EnemyStore e, int i, float distSq) { return -distSq; }
+        },
+        /** The enemy with the most health left. */
+        STRONGEST {
+            public float score(EnemyStore e, int i, float distSq) { return e.getHealth(i); }
+        },
+        /** The enemy that has travelled the furthest along the path. */
+        FURTHEST {
+            public float score(EnemyStore e, int i, float distSq) { return e.getDistanceTravelled(i); }
+        }
+    }
     protected static final String SPRITE_PATH = "assets/sprites/towers/";
+    private static final Color RANGE_EDGE = new Color(110, 110, 110, 110), RANGE_FILL = new Color(80, 80, 80, 80);
     
     protected final World world;
     private boolean placed = false;
     private float range;
     private int fireRate; // In ms
-    private long nextShot = 0L; // Time until next fire (in ms)
+    /** Whether aim found a target for fire to shoot at this tick. */
+    private boolean aiming = false;
+    /** Direction picked by aim for fire to shoot in. */
+    private float aimX, aimY;
     private Type type;
+    private Targeting targeting = Targeting.FIRST;
 
     /**
      * Create a tower.
@@ -62,7 +82,7 @@ public abstract class Tower extends Sprite {
      * @throws SlickException
      */
     protected Tower(float x, float y, Type type, World world) throws SlickException {
-        super(x, y, type.getImage());
+        super(x, y, world.getSprites().get(type));
         this.fireRate = type.fireRate; // could also remove these instance variables and just get from the type
         this.range = type.range;
         this.world = world;
@@ -70,7 +90,7 @@ public abstract class Tower extends Sprite {
     }
 
     /** Fires a projectile in the given direction. */
-    protected abstract void shoot(Vector2f dir) throws SlickException;
+    protected abstract void shoot(float dirX, float dirY) throws SlickException;
     
     public static final Tower create(Type type, float x, float y, World world) throws SlickException {
         switch (type) {
@@ -82,25 +102,26 @@ public abstract class Tower extends Sprite {
         return null;
     }
     
-    /** Choose an enemy to target (the first enemy in range by default). */
-    protected Enemy chooseTarget(List<Enemy> enemies) {
-        // Target the first enemy in range
-        Enemy target = null;
-        for (Enemy e : enemies) {
-            if (distanceTo(e) <= range) {
-                target = e;
-                break;
-            }
-        }
-        return target;
+    /** Choose an enemy in range to target (the first enemy by default), returning its slot or -1 for none. */
+    protected int chooseTarget() {
+        return world.findTarget(getX(), getY(), range, targeting);
     }
     
-    /** Calculate a direction vector aiming at the target enemy. */
-    protected Vector2f aimAt(Enemy target) {
-        Vector2f vec = new Vector2f(target.getX() - getX(), target.getY() - getY());
-        vec.add(target.getV());
-        vec.normalise();
-        return vec;
+    /**
+     * Aim at the target enemy with a unit vector (see setAim).
+     * @param enemies The world's enemies
+     * @param target Slot of the enemy to aim at
+     */
+    protected void aimAt(EnemyStore enemies, int target) {
+        float x = enemies.getX(target) - getX() + enemies.getVX(target);
+        float y = enemies.getY(target) - getY() + enemies.getVY(target);
+        // Same arithmetic as Vector2f.normalise, so shots land exactly where they used to
+        float length = (float) Math.sqrt(x * x + y * y);
+        if (length != 0) {
+            x /= length;
+            y /= length;
+        }
+        setAim(x, y);
     }
     
     /** Places the tower. */
@@ -109,25 +130,31 @@ public abstract class Tower extends Sprite {
         placed = true;
     }
     
-    /** Counts down the shot timer.
-     * Returns true if enough time has passed to shoot.
+    /**
+     * Pick a target and aim at it, ready to fire. The world calls this once the tower's cooldown is over
+     * (see World.tick). Only reads the world, so towers can aim in parallel.
+     * @return True if there was a target in range
      */
-    public void update(int delta) throws SlickException {
-        nextShot -= delta;
-        if (nextShot <= 0) {
-            // Target the next enemy in range
-            Enemy target = chooseTarget(world.getEnemies());
-            if (target == null) {
-                // Instead of firing, just wait and try again next tick
-                return;
-            }
-            
-            // Aim at the target and shoot
-            shoot(aimAt(target));
-            
-            // Reset the timer for the next shot
-            nextShot = fireRate;
+    public boolean aim() {
+        int target = chooseTarget();
+        aiming = target >= 0;
+        if (aiming) {
+            aimAt(world.getEnemies(), target);
+        }
+        return aiming;
+    }
+
+    /**
+     * Shoot in the direction picked by aim, if any.
+     * @return True if the tower shot
+     */
+    public boolean fire() throws SlickException {
+        if (!aiming) {
+            return false;
         }
+        shoot(aimX, aimY);
+        aiming = false;
+        return true;
     }
 
     /** Draws a range circle around towers. */
@@ -136,19 +163,27 @@ public abstract class Tower extends Sprite {
         float xCorner = getX() - range, yCorner = getY() - range;
 
         // Draw circumference
-        g.setColor(new Color(110, 110, 110, 110));
+        g.setColor(RANGE_EDGE);
         g.drawOval(xCorner, yCorner, range * 2, range * 2);
         
         // Fill with a shade of grey (can change vals depending on contrast w/ textures)
-        g.setColor(new Color(80, 80, 80, 80));
+        g.setColor(RANGE_FILL);
         g.fillOval(xCorner, yCorner, range * 2, range * 2);
     }
 
-    public void waveReset() {
-        nextShot = 0;
-    }
-
     public boolean isPlaced() { return placed; }
 
     public Type getType() { return type; }
+    public float getRange() { return range; }
+    /** Time between shots in ms. */
+    public int getFireRate() { return fireRate; }
+    public Targeting getTargeting() { return targeting; }
+    /** Direction picked by the last aimAt. */
+    protected float getAimX() { return aimX; }
+    protected float getAimY() { return aimY; }
+
+    /** Set the direction fire shoots in (used by aimAt). */
+    protected void setAim(float x, float y) { aimX = x; aimY = y; }
+
+    public void setTargeting(Targeting targeting) { this.targeting = targeting; }
 }
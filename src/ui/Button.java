@@ -78,6 +78,7 @@ public class Button extends Rectangle {
 
     public String getText() { return text; }
     public Boolean getDisabled() { return disabled; }
+    public Boolean getHover() { return hovered; }
     
     public void setDisabled(Boolean state) { disabled = state; }
     public void setHover(Boolean hovered) { this.hovered = hovered; }
@@ -0,0 +1,24 @@
+package ui;
+
+import java.awt.Font;
+
+import org.newdawn.slick.TrueTypeFont;
+
+/**
+ * Fonts used by the in-game interface.
+ * Kept apart from the game logic so the fonts (which need an OpenGL context) are only built once something is drawn.
+ */
+public final class Fonts {
+    private static final Font
+            TINY_FONT = new Font("Verdana", Font.PLAIN, 11),
+            SMALL_FONT = new Font("Verdana", Font.PLAIN, 15),
+            MEDIUM_FONT = new Font("Verdana", Font.BOLD, 20),
+            LARGE_FONT = new Font("Verdana", Font.BOLD, 40);
+    public static final TrueTypeFont
+            TINY_TTF = new TrueTypeFont(TINY_FONT, true),
+            SMALL_TTF = new TrueTypeFont(SMALL_FONT, true),
+            MEDIUM_TTF = new TrueTypeFont(MEDIUM_FONT, true),
+            LARGE_TTF =  new TrueTypeFont(LARGE_FONT, true);
+
+    private Fonts() {} // prevents instantiation from outside the class
+}
@@ -1,7 +1,6 @@
 package ui;
 
 import control.App;
-import control.World;
 import org.newdawn.slick.Image;
 import org.newdawn.slick.TrueTypeFont;
 
@@ -20,7 +19,7 @@ public class TextSprite extends Sprite {
     /** A line of text and how to style it */
     private class Line {
         String text;
-        TrueTypeFont ttf = World.SMALL_TTF;
+        TrueTypeFont ttf = Fonts.SMALL_TTF;
 
         Line(String text, TrueTypeFont ttf) {
             this.text = text;
@@ -81,6 +80,8 @@ public class TextSprite extends Sprite {
         textItems.put(mode, new Line(text, ttf));
     }
 
+    public boolean isHovered() { return hovered; }
+
     public void setHovered(Boolean hovered) {
         this.hovered = hovered;
     }